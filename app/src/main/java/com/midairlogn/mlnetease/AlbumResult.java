@@ -0,0 +1,13 @@
+package com.midairlogn.mlnetease;
+
+import java.util.List;
+
+public class AlbumResult {
+    public String id;
+    public String name;
+    public String artist;
+    public String coverImgUrl;
+    public long publishTime;
+    public String description;
+    public List<Song> songs;
+}
@@ -0,0 +1,255 @@
+package com.midairlogn.mlnetease;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Central place for all background work in the app. Each workload class gets its own named,
+ * bounded pool so a burst of one kind (e.g. cover loads while skipping) cannot starve the others.
+ *
+ * A full queue never loses work silently. The image pool drops its oldest task, since a stale
+ * cover is worthless. Elsewhere a {@link Droppable} task is turned away through onDropped(), so
+ * whoever waits on it gets an error, and any other task runs on the submitting thread. That
+ * slows the submitter down instead of adding threads, so a pool never grows past its size.
+ */
+public final class AppExecutors {
+    private static final String TAG = "AppExecutors";
+
+    // OkHttp dispatcher threads. Sized to match the dispatcher's maxRequests so it never queues here.
+    private static final Pool NETWORK = new Pool("network", 6, 0, false);
+    // Blocking API orchestration and JSON parsing
+    private static final Pool API = new Pool("api", 4, 64, false);
+    // Cover / album art download and decode. The newest cover is the one on screen.
+    private static final Pool IMAGE = new Pool("image", 2, 16, true);
+    // Disk reads and writes (caches, saved images)
+    private static final Pool DISK_IO = new Pool("disk-io", 2, 64, false);
+    // Local stream proxy connections. Each one holds its thread for a whole track, and a queued one
+    // would leave its player waiting for nothing, so there is a thread for every connection that can
+    // be open at once: current, prefetched and crossfading-out engines, each with a few range
+    // requests in flight while seeking. Past that and one queued, connections are refused (see StreamProxy).
+    private static final Pool STREAM = new Pool("stream", 16, 1, false);
+    // Offline download chunk workers. Queued chunks must not be dropped either.
+    private static final Pool DOWNLOAD = new Pool("download", 4, 0, false);
+
+    private AppExecutors() {}
+
+    public static Pool network() {
+        return NETWORK;
+    }
+
+    public static Pool api() {
+        return API;
+    }
+
+    public static Pool image() {
+        return IMAGE;
+    }
+
+    public static Pool diskIO() {
+        return DISK_IO;
+    }
+
+    public static Pool stream() {
+        return STREAM;
+    }
+
+    public static Pool download() {
+        return DOWNLOAD;
+    }
+
+    /**
+     * Task that may be turned away when its pool is full: onDropped() is called instead of run(),
+     * so it can fail its callback rather than leave it waiting forever.
+     */
+    public interface Droppable extends Runnable {
+        void onDropped();
+    }
+
+    private static final class DroppableTask implements Droppable {
+        private final Runnable task;
+        private final Runnable onDropped;
+
+        DroppableTask(Runnable task, Runnable onDropped) {
+            this.task = task;
+            this.onDropped = onDropped;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public void onDropped() {
+            onDropped.run();
+        }
+    }
+
+    // What submit() queues for a Droppable, so the pool still sees it as one
+    private static final class DroppableFuture extends FutureTask<Void> implements Droppable {
+        private final Droppable task;
+
+        DroppableFuture(Droppable task) {
+            super(task, null);
+            this.task = task;
+        }
+
+        @Override
+        public void onDropped() {
+            cancel(false);
+            task.onDropped();
+        }
+    }
+
+    public static String dumpStats() {
+        return NETWORK + "\n" + API + "\n" + IMAGE + "\n" + DISK_IO + "\n" + STREAM + "\n" + DOWNLOAD;
+    }
+
+    public static final class Pool implements Executor {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final ThreadFactory factory;
+        private final AtomicLong submittedCount = new AtomicLong();
+        private final AtomicLong droppedCount = new AtomicLong();
+        private final AtomicLong callerRunsCount = new AtomicLong();
+
+        Pool(String name, int threads, int queueCapacity, boolean dropOldest) {
+            this.name = name;
+            AtomicInteger threadNumber = new AtomicInteger(1);
+            factory = r -> {
+                Thread t = new Thread(() -> {
+                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "ml-" + name + "-" + threadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            };
+            RejectedExecutionHandler whenFull = (r, e) -> {
+                if (e.isShutdown()) return;
+                if (dropOldest) {
+                    Runnable oldest = e.getQueue().poll();
+                    if (oldest != null) drop(oldest);
+                    e.execute(r);
+                } else if (r instanceof Droppable) {
+                    drop(r);
+                } else {
+                    callerRunsCount.incrementAndGet();
+                    Log.w(TAG, name + " queue full, running task on " + Thread.currentThread().getName());
+                    r.run();
+                }
+            };
+            LinkedBlockingQueue<Runnable> queue = queueCapacity > 0
+                    ? new LinkedBlockingQueue<>(queueCapacity)
+                    : new LinkedBlockingQueue<>();
+            executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, queue, factory, whenFull);
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        private void drop(Runnable task) {
+            droppedCount.incrementAndGet();
+            Log.w(TAG, name + " queue full, dropped a task");
+            if (task instanceof Droppable) {
+                ((Droppable) task).onDropped();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submittedCount.incrementAndGet();
+            executor.execute(command);
+        }
+
+        // task, or onDropped instead if the pool is too busy to take it
+        public void execute(Runnable task, Runnable onDropped) {
+            execute(new DroppableTask(task, onDropped));
+        }
+
+        public Future<?> submit(Runnable task) {
+            submittedCount.incrementAndGet();
+            if (task instanceof Droppable) {
+                DroppableFuture future = new DroppableFuture((Droppable) task);
+                executor.execute(future);
+                return future;
+            }
+            return executor.submit(task);
+        }
+
+        public Future<?> submit(Runnable task, Runnable onDropped) {
+            return submit(new DroppableTask(task, onDropped));
+        }
+
+        public <T> Future<T> submit(Callable<T> task) {
+            submittedCount.incrementAndGet();
+            return executor.submit(task);
+        }
+
+        // Dedicated thread named and prioritized like the pool's own, for a loop that runs for the
+        // app's lifetime (e.g. a server's accept loop) and would otherwise hold a pool thread forever
+        public Thread newThread(Runnable task) {
+            return factory.newThread(task);
+        }
+
+        // The underlying service, for APIs that need an ExecutorService (e.g. OkHttp's Dispatcher)
+        public ThreadPoolExecutor getExecutorService() {
+            return executor;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQueueDepth() {
+            return executor.getQueue().size();
+        }
+
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+
+        public int getPoolSize() {
+            return executor.getPoolSize();
+        }
+
+        public int getMaxPoolSize() {
+            return executor.getMaximumPoolSize();
+        }
+
+        public long getCompletedCount() {
+            return executor.getCompletedTaskCount();
+        }
+
+        public long getSubmittedCount() {
+            return submittedCount.get();
+        }
+
+        public long getDroppedCount() {
+            return droppedCount.get();
+        }
+
+        // Tasks run on the submitting thread because the queue was full
+        public long getCallerRunsCount() {
+            return callerRunsCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": active=" + getActiveCount() + "/" + getMaxPoolSize()
+                    + " queued=" + getQueueDepth()
+                    + " submitted=" + getSubmittedCount()
+                    + " completed=" + getCompletedCount()
+                    + " dropped=" + getDroppedCount()
+                    + " callerRuns=" + getCallerRunsCount();
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.midairlogn.mlnetease;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -11,9 +10,6 @@ import android.widget.ImageView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 public class CoverFragment extends Fragment implements MusicPlayerManager.OnSongChangedListener {
 
@@ -67,17 +63,9 @@ public class CoverFragment extends Fragment implements MusicPlayerManager.OnSong
             return;
         }
 
-        new Thread(() -> {
+        AppExecutors.image().execute(() -> {
             try {
-                URL url = new URL(urlString);
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Safari/537.36 Chrome/91.0.4472.164 NeteaseMusicDesktop/2.10.2.200154");
-                connection.setRequestProperty("Referer", "https://music.163.com/");
-                connection.setDoInput(true);
-                connection.connect();
-                InputStream input = connection.getInputStream();
-                Bitmap bitmap = BitmapFactory.decodeStream(input);
+                Bitmap bitmap = CoverLoader.load(urlString);
 
                 if (getActivity() != null) {
                     getActivity().runOnUiThread(() -> {
@@ -89,6 +77,6 @@ public class CoverFragment extends Fragment implements MusicPlayerManager.OnSong
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        }).start();
+        });
     }
 }
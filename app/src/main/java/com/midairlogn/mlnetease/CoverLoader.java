@@ -0,0 +1,44 @@
+package com.midairlogn.mlnetease;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Downloads and decodes cover art. The mini player, the cover page and the media notification
+ * usually ask for the same cover at the same moment; concurrent loads of one url share a single
+ * download and decoded bitmap. Blocking, call from AppExecutors.image().
+ */
+public final class CoverLoader {
+    private static final SingleFlight<Bitmap> inFlight = new SingleFlight<>("cover");
+
+    private CoverLoader() {}
+
+    // Returns the decoded cover, or null if it could not be decoded
+    public static Bitmap load(String urlString) throws Exception {
+        return inFlight.run(urlString, () -> download(urlString));
+    }
+
+    public static String dumpStats() {
+        return inFlight.toString();
+    }
+
+    private static Bitmap download(String urlString) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection();
+        try {
+            connection.setRequestMethod("GET");
+            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Safari/537.36 Chrome/91.0.4472.164 NeteaseMusicDesktop/2.10.2.200154");
+            connection.setRequestProperty("Referer", "https://music.163.com/");
+            connection.setDoInput(true);
+            connection.connect();
+            try (InputStream input = connection.getInputStream()) {
+                return BitmapFactory.decodeStream(input);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -94,16 +94,11 @@ public class CryptoUtils {
             JSONObject json = new JSONObject();
 
             // Try to treat id as number if possible
-            String trimmedId = id.trim();
-            if (trimmedId.matches("-?\\d+")) {
-                try {
-                    json.put("ids", new org.json.JSONArray().put(Long.parseLong(trimmedId)));
-                } catch (NumberFormatException e) {
-                     // Fallback to string if too long for Long
-                    json.put("ids", new org.json.JSONArray().put(trimmedId));
-                }
+            long numericId = Song.parseId(id);
+            if (numericId >= 0) {
+                json.put("ids", new org.json.JSONArray().put(numericId));
             } else {
-                json.put("ids", new org.json.JSONArray().put(trimmedId));
+                json.put("ids", new org.json.JSONArray().put(id.trim()));
             }
 
             json.put("level", level);
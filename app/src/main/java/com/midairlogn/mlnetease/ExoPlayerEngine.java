@@ -0,0 +1,223 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.OptIn;
+import androidx.media3.common.AudioAttributes;
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DefaultDataSource;
+import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * {@link PlaybackEngine} on Media3 ExoPlayer. Buffer durations come from {@link SettingsManager}
+ * and remote tracks are streamed through {@link StreamProxy} like MediaPlayer's, so both engines
+ * share the one {@link StreamCache} and its budget, and replays never go back to the network.
+ *
+ * ExoPlayer cannot chain a second instance gaplessly, so setNext() is not supported; the manager
+ * starts the already prepared next engine itself when this one ends.
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class ExoPlayerEngine implements PlaybackEngine {
+    private static final String TAG = "ExoPlayerEngine";
+    // Where ExoPlayer used to keep a cache of its own; removed on first use
+    private static final String LEGACY_CACHE_DIR_NAME = "exo";
+    private static boolean legacyCacheRemoved = false;
+
+    private final Context context;
+    private final ExoPlayer player;
+    private Listener listener;
+    // Waiting for the first STATE_READY of the current item
+    private boolean preparing = false;
+    // Buffering caused by a seek is expected and not reported as a stall
+    private boolean seeking = false;
+    private boolean stalled = false;
+
+    private static synchronized void removeLegacyCache(Context context) {
+        if (legacyCacheRemoved) return;
+        legacyCacheRemoved = true;
+        File dir = new File(context.getCacheDir(), LEGACY_CACHE_DIR_NAME);
+        AppExecutors.diskIO().execute(() -> deleteTree(dir));
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteTree(child);
+        }
+        file.delete();
+    }
+
+    // Must be called on the player thread, whose looper the player is bound to
+    public ExoPlayerEngine(Context context, SettingsManager settings) {
+        this.context = context.getApplicationContext();
+        removeLegacyCache(this.context);
+        // The headers matter when the proxy falls back to the direct url
+        DefaultHttpDataSource.Factory http = new DefaultHttpDataSource.Factory()
+                .setUserAgent("Mozilla/5.0 (Windows NT 10.0; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Safari/537.36 Chrome/91.0.4472.164 NeteaseMusicDesktop/2.10.2.200154")
+                .setDefaultRequestProperties(Collections.singletonMap("Referer", "https://music.163.com/"))
+                .setAllowCrossProtocolRedirects(true);
+        DefaultDataSource.Factory sources = new DefaultDataSource.Factory(context, http);
+
+        // DefaultLoadControl rejects inconsistent durations, so keep them in order
+        int maxBuffer = Math.max(settings.getMaxBufferMs(), 1000);
+        int minBuffer = Math.min(Math.max(settings.getMinBufferMs(), 500), maxBuffer);
+        int forPlayback = Math.min(settings.getBufferForPlaybackMs(), minBuffer);
+        int afterRebuffer = Math.min(settings.getBufferAfterRebufferMs(), minBuffer);
+        DefaultLoadControl loadControl = new DefaultLoadControl.Builder()
+                .setBufferDurationsMs(minBuffer, maxBuffer, forPlayback, afterRebuffer)
+                .build();
+
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                .setContentType(C.AUDIO_CONTENT_TYPE_MUSIC)
+                .setUsage(C.USAGE_MEDIA)
+                .build();
+
+        player = new ExoPlayer.Builder(context)
+                .setLooper(Looper.myLooper())
+                .setLoadControl(loadControl)
+                .setMediaSourceFactory(new DefaultMediaSourceFactory(sources))
+                .setAudioAttributes(audioAttributes, false)
+                .build();
+        player.addListener(new Player.Listener() {
+            @Override
+            public void onPlaybackStateChanged(int playbackState) {
+                onStateChanged(playbackState);
+            }
+
+            @Override
+            public void onPlayerError(PlaybackException error) {
+                preparing = false;
+                if (listener != null) {
+                    listener.onError(ExoPlayerEngine.this, error.getErrorCodeName() + ": " + error.getMessage());
+                }
+            }
+        });
+    }
+
+    private void onStateChanged(int playbackState) {
+        if (listener == null) return;
+        switch (playbackState) {
+            case Player.STATE_READY:
+                if (preparing) {
+                    preparing = false;
+                    listener.onPrepared(this);
+                } else if (stalled) {
+                    stalled = false;
+                    listener.onBuffering(this, false);
+                }
+                seeking = false;
+                break;
+            case Player.STATE_BUFFERING:
+                if (!preparing && !seeking && !stalled) {
+                    stalled = true;
+                    listener.onBuffering(this, true);
+                }
+                break;
+            case Player.STATE_ENDED:
+                listener.onCompletion(this);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void prepareStream(String cacheKey, String url) throws IOException {
+        prepare(MediaItem.fromUri(StreamProxy.getInstance(context).proxyUrl(cacheKey, url)));
+    }
+
+    @Override
+    public void prepareFile(File file) {
+        prepare(MediaItem.fromUri(Uri.fromFile(file)));
+    }
+
+    private void prepare(MediaItem item) {
+        preparing = true;
+        seeking = false;
+        stalled = false;
+        player.setPlayWhenReady(false);
+        player.setMediaItem(item);
+        player.prepare();
+    }
+
+    @Override
+    public void start() {
+        if (player.getPlaybackState() == Player.STATE_ENDED) {
+            player.seekTo(0);
+        }
+        player.setPlayWhenReady(true);
+    }
+
+    @Override
+    public void pause() {
+        player.setPlayWhenReady(false);
+    }
+
+    @Override
+    public void seekTo(int msec) {
+        seeking = true;
+        player.seekTo(msec);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return player.isPlaying();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return (int) player.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        long duration = player.getDuration();
+        return duration == C.TIME_UNSET ? 0 : (int) duration;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        player.setVolume(volume);
+    }
+
+    @Override
+    public boolean setNext(PlaybackEngine next) {
+        return next == null;
+    }
+
+    @Override
+    public void reset() {
+        preparing = false;
+        seeking = false;
+        stalled = false;
+        try {
+            player.stop();
+            player.clearMediaItems();
+        } catch (Exception e) {
+            Log.w(TAG, "reset failed", e);
+        }
+    }
+
+    @Override
+    public void release() {
+        player.release();
+    }
+}
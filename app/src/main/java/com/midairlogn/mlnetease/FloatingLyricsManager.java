@@ -5,9 +5,8 @@ import android.content.Intent;
 import android.graphics.Color;
 import android.graphics.PixelFormat;
 import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.DisplayMetrics;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -19,7 +18,6 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.RelativeLayout;
 
-import java.util.List;
 
 public class FloatingLyricsManager {
     private Context context;
@@ -30,7 +28,7 @@ public class FloatingLyricsManager {
     private MusicPlayerManager musicPlayerManager;
 
     // Views
-    private TextView tvLyricsCurrent;
+    private KaraokeTextView tvLyricsCurrent;
     private TextView tvLyricsNext;
     private TextView tvSongTitle;
     private TextView tvSongArtist;
@@ -48,17 +46,36 @@ public class FloatingLyricsManager {
     private boolean isSettingsExpanded = false;
     private boolean isLocked = false;
     private boolean isAppVisible = false;
-    private List<LyricLine> currentLyrics;
+    // The manager's timeline, and what is shown: it with the title line in front
+    private LyricTimeline sharedLyrics = LyricTimeline.EMPTY;
+    private String titleLine;
+    private LyricTimeline currentLyrics = LyricTimeline.EMPTY;
+    private final LyricTimeline.Cursor lyricCursor = new LyricTimeline.Cursor();
     private int currentLyricIndex = -1;
     private int screenWidth, screenHeight;
 
-    private Handler handler = new Handler(Looper.getMainLooper());
-    private Runnable lyricUpdateTask;
+    // Unsung part of a word-timed line; the sung part takes the lyric color
+    private static final int KARAOKE_BASE_COLOR = Color.WHITE;
+    // Renders the window on vsync, frame after frame only while playing and shown
+    private final Choreographer.FrameCallback frameCallback = this::onFrame;
+    private boolean framePosted = false;
+    // "No Music"/"No Lyrics" while one of them is showing
+    private String shownMessage;
+
+    // Scroll plan of a line too wide for the window, made when the line (or its width) changes:
+    // it stays put until scrollStart, then scrolls maxScroll px over scrollDuration ms
+    private float lineWidth = 0;
+    private int plannedWidth = -1;
+    private float maxScroll = 0;
+    private long scrollStart = 0;
+    private long scrollDuration = 1;
 
     private final MusicPlayerManager.OnPlaybackStateChangedListener playbackStateListener = new MusicPlayerManager.OnPlaybackStateChangedListener() {
         @Override
         public void onPlaybackStateChanged(boolean isPlaying) {
             updatePlayButtonState(isPlaying);
+            // Playing starts the frames; pausing gets one last frame, after which they stop
+            requestFrame();
         }
     };
 
@@ -232,8 +249,6 @@ public class FloatingLyricsManager {
 
                             // Ensure it doesn't go off screen
                             // Since gravity is TOP | LEFT, x/y is top-left corner
-                            // But actually default gravity for window manager is often center or something if not specified.
-                            // I set Gravity.TOP | Gravity.START in LayoutParams.
 
                             if (newX < 0) newX = 0;
                             if (newY < 0) newY = 0;
@@ -266,13 +281,12 @@ public class FloatingLyricsManager {
                 WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH,
                 PixelFormat.TRANSLUCENT);
 
+        // LEFT rather than START: x stays measured from the left edge, like the raw touch
+        // coordinates the drag adds to it, even in right-to-left layouts
         params.gravity = Gravity.TOP | Gravity.LEFT;
         params.x = (screenWidth - width) / 2;
         // Default position: Bottom area (approx 80% down)
         params.y = (int) (screenHeight * 0.8f);
-
-        // Start updates
-        startLyricUpdates();
     }
 
     private void toggleLock(ImageButton btn) {
@@ -302,7 +316,16 @@ public class FloatingLyricsManager {
         float size = settingsManager.getLyricSize();
         if (tvLyricsCurrent != null) {
             tvLyricsCurrent.setTextSize(size);
-            tvLyricsCurrent.setTextColor(color);
+            boolean karaoke = currentLyricIndex >= 0 && currentLyricIndex < currentLyrics.size()
+                    && currentLyrics.hasWords(currentLyricIndex);
+            tvLyricsCurrent.setTextColor(karaoke ? KARAOKE_BASE_COLOR : color);
+            tvLyricsCurrent.setSungColor(color);
+            if (currentLyricIndex >= 0 && currentLyricIndex < currentLyrics.size()) {
+                // The text size may have changed, and the scroll plan with it
+                lineWidth = tvLyricsCurrent.getPaint().measureText(currentLyrics.getText(currentLyricIndex));
+                plannedWidth = -1;
+                requestFrame();
+            }
         }
         if (tvLyricsNext != null) {
             tvLyricsNext.setTextSize(Math.max(10f, size - 2f));
@@ -330,7 +353,7 @@ public class FloatingLyricsManager {
         applySettings();
 
         // Update lyrics immediately
-        updateLyrics(musicPlayerManager.getCurrentLyric());
+        updateLyrics(musicPlayerManager.getCurrentLyrics());
         updateSongInfo(musicPlayerManager.getCurrentSong());
     }
 
@@ -342,7 +365,7 @@ public class FloatingLyricsManager {
                 e.printStackTrace();
             }
         }
-        stopLyricUpdates();
+        stopFrames();
         floatingView = null; // Clean up
         isExpanded = false;
         isSettingsExpanded = false;
@@ -401,186 +424,184 @@ public class FloatingLyricsManager {
         }
     }
 
-    public void updateLyrics(String lyrics) {
-        currentLyrics = LyricsUtils.parseLyrics(lyrics);
+    // lyrics is the manager's shared timeline; it is only read here
+    public void updateLyrics(LyricTimeline lyrics) {
+        sharedLyrics = lyrics;
+        rebuildLyrics();
+    }
 
-        // Add song title and artist at 00:00.000 if not present
-        Song song = musicPlayerManager.getCurrentSong();
+    public void updateSongInfo(Song song) {
         if (song != null) {
-            boolean hasStartLyric = false;
-            if (!currentLyrics.isEmpty()) {
-                LyricLine first = currentLyrics.get(0);
-                if (first.time == 0) {
-                    hasStartLyric = true;
-                }
-            }
+            if (tvSongTitle != null) tvSongTitle.setText(song.name);
+            if (tvSongArtist != null) tvSongArtist.setText(song.artists);
 
-            if (!hasStartLyric) {
-                String text = song.name + "  " + song.artists;
-                // Add to the beginning of the list
-                currentLyrics.add(0, new LyricLine(0, text));
+            // The lyrics may stay the same (none) across songs, the title line does not
+            String title = song.name + "  " + song.artists;
+            if (!title.equals(titleLine)) {
+                titleLine = title;
+                rebuildLyrics();
             }
         }
+    }
 
+    private void rebuildLyrics() {
+        // Add song title and artist at 00:00.000 if not present
+        currentLyrics = titleLine != null ? sharedLyrics.withLeadingLine(titleLine) : sharedLyrics;
+        lyricCursor.reset(currentLyrics);
         currentLyricIndex = -1;
+        shownMessage = null;
+        requestFrame();
     }
 
-    public void updateSongInfo(Song song) {
-        if (song != null) {
-            if (tvSongTitle != null) tvSongTitle.setText(song.name);
-            if (tvSongArtist != null) tvSongArtist.setText(song.artists);
-        }
+    // Renders a frame on the next vsync; frames keep coming only while playing
+    private void requestFrame() {
+        if (framePosted || floatingView == null) return;
+        framePosted = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
     }
 
-    private void startLyricUpdates() {
-        if (lyricUpdateTask != null) return;
-        lyricUpdateTask = new Runnable() {
-            @Override
-            public void run() {
-                updateCurrentLyricLine();
-                handler.postDelayed(this, 50); // Update frequently for smooth scrolling
-            }
-        };
-        handler.post(lyricUpdateTask);
+    private void stopFrames() {
+        if (!framePosted) return;
+        framePosted = false;
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
     }
 
-    private void stopLyricUpdates() {
-        if (lyricUpdateTask != null) {
-            handler.removeCallbacks(lyricUpdateTask);
-            lyricUpdateTask = null;
+    private void onFrame(long frameTimeNanos) {
+        framePosted = false;
+        if (floatingView == null) return;
+        updateCurrentLyricLine();
+        if (musicPlayerManager.isPlaying()) {
+            requestFrame();
         }
     }
 
+    // One frame. The position is the player's estimate and the line comes from the cursor, so a
+    // frame within the same line only advances the highlight and the planned scroll.
     private void updateCurrentLyricLine() {
+        if (tvLyricsCurrent == null) return;
         if (musicPlayerManager.getCurrentSong() == null) {
-            if (tvLyricsCurrent != null) {
-                 tvLyricsCurrent.setText("No Music");
-                 tvLyricsCurrent.setScrollX(0);
-            }
-            if (tvLyricsNext != null) tvLyricsNext.setText("");
+            showMessage("No Music");
             return;
         }
-
-        if (currentLyrics == null || currentLyrics.isEmpty()) {
-            if (tvLyricsCurrent != null) {
-                 tvLyricsCurrent.setText("No Lyrics");
-                 tvLyricsCurrent.setScrollX(0);
-            }
-            if (tvLyricsNext != null) tvLyricsNext.setText("");
+        if (currentLyrics.isEmpty()) {
+            showMessage("No Lyrics");
             return;
         }
 
-        int pos = musicPlayerManager.getCurrentPosition();
-        int newIndex = -1;
+        long pos = musicPlayerManager.getCurrentPosition();
+        int newIndex = lyricCursor.seek(pos);
+        if (newIndex == -1) return;
 
-        for (int i = 0; i < currentLyrics.size(); i++) {
-            if (currentLyrics.get(i).time > pos) {
-                break;
-            }
-            newIndex = i;
+        if (newIndex != currentLyricIndex) {
+            currentLyricIndex = newIndex;
+            showLine(pos);
         }
 
-        if (newIndex != -1) {
-            // Update text if index changed
-            if (newIndex != currentLyricIndex) {
-                currentLyricIndex = newIndex;
-                String text = currentLyrics.get(currentLyricIndex).text;
-                if (tvLyricsCurrent != null) {
-                    tvLyricsCurrent.setText(text);
+        int contentWidth = tvLyricsCurrent.getWidth() - tvLyricsCurrent.getPaddingLeft() - tvLyricsCurrent.getPaddingRight();
+        if (contentWidth != plannedWidth) {
+            // Once per line, and again when the view has been laid out for it
+            planScroll(contentWidth);
+        }
+        if (currentLyrics.hasWords(currentLyricIndex)) {
+            tvLyricsCurrent.setSungChars(lyricCursor.sungAt(pos));
+        }
+        tvLyricsCurrent.setScrollX(scrollXAt(pos));
+    }
 
-                    int highlightColor = settingsManager.getLyricColor();
-                    if (highlightColor == 0) highlightColor = Color.parseColor("#4CAF50"); // Default
+    private void showMessage(String message) {
+        if (message.equals(shownMessage)) return;
+        shownMessage = message;
+        tvLyricsCurrent.setSungChars(-1);
+        tvLyricsCurrent.setText(message);
+        tvLyricsCurrent.setScrollX(0);
+        if (tvLyricsNext != null) tvLyricsNext.setText("");
+    }
 
-                    tvLyricsCurrent.setTextColor(highlightColor);
-                }
+    private void showLine(long pos) {
+        shownMessage = null;
+        String text = currentLyrics.getText(currentLyricIndex);
+        tvLyricsCurrent.setText(text);
 
-                if (tvLyricsNext != null) {
-                    if (currentLyricIndex + 1 < currentLyrics.size()) {
-                        tvLyricsNext.setText(currentLyrics.get(currentLyricIndex + 1).text);
-                    } else {
-                        tvLyricsNext.setText("");
-                    }
-                }
+        int highlightColor = settingsManager.getLyricColor();
+        if (highlightColor == 0) highlightColor = Color.parseColor("#4CAF50"); // Default
+
+        if (currentLyrics.hasWords(currentLyricIndex)) {
+            tvLyricsCurrent.setTextColor(KARAOKE_BASE_COLOR);
+            tvLyricsCurrent.setSungColor(highlightColor);
+            tvLyricsCurrent.setSungChars(lyricCursor.sungAt(pos));
+        } else {
+            tvLyricsCurrent.setTextColor(highlightColor);
+            tvLyricsCurrent.setSungChars(-1);
+        }
+
+        if (tvLyricsNext != null) {
+            if (currentLyricIndex + 1 < currentLyrics.size()) {
+                tvLyricsNext.setText(currentLyrics.getText(currentLyricIndex + 1));
+            } else {
+                tvLyricsNext.setText("");
             }
+        }
 
-            // Calculate scrolling
-            if (tvLyricsCurrent != null) {
-                // Measure text width first to calculate max scroll
-                float textWidth = tvLyricsCurrent.getPaint().measureText(tvLyricsCurrent.getText().toString());
-                int viewWidth = tvLyricsCurrent.getWidth();
-                int contentWidth = 0;
-                float maxScroll = 0;
-
-                if (viewWidth > 0) {
-                    contentWidth = viewWidth - tvLyricsCurrent.getPaddingLeft() - tvLyricsCurrent.getPaddingRight();
-                    maxScroll = Math.max(0, textWidth - contentWidth);
-                }
+        lineWidth = tvLyricsCurrent.getPaint().measureText(text);
+        plannedWidth = -1;
+    }
 
-                if (maxScroll > 0) {
-                    long startTime = currentLyrics.get(currentLyricIndex).time;
-                    long endTime = (currentLyricIndex + 1 < currentLyrics.size()) ?
-                            currentLyrics.get(currentLyricIndex + 1).time :
-                            startTime + 5000; // Default 5s for last line
-
-                    long duration = endTime - startTime;
-                    if (duration > 0) {
-                        long defaultDelay = 1000; // 1 second
-                        long minDelay = 200;      // 0.2 second
-
-                        // Calculate comfortable scrolling speed
-                        // Assume a fast but readable speed: 0.4 px/ms (400 px/s)
-                        // This corresponds to roughly 10-15 characters per second on high density screens
-                        float speedThreshold = 0.4f;
-
-                        // Minimum time required to scroll the full distance at threshold speed
-                        long minScrollTime = (long) (maxScroll / speedThreshold);
-
-                        // Remaining time for delays
-                        long availableDelay = duration - minScrollTime;
-
-                        long startDelay, endDelay;
-
-                        if (availableDelay >= defaultDelay * 2) {
-                            // Plenty of time, use default delays
-                            startDelay = defaultDelay;
-                            endDelay = defaultDelay;
-                        } else if (availableDelay > minDelay * 2) {
-                            // Moderate time, split remaining time
-                            startDelay = availableDelay / 2;
-                            endDelay = availableDelay / 2;
-                        } else {
-                            // Tight time, use minimum delays and force faster scrolling
-                            startDelay = Math.min(minDelay, duration / 4);
-                            endDelay = startDelay;
-                        }
+    private void planScroll(int contentWidth) {
+        plannedWidth = contentWidth;
+        maxScroll = contentWidth > 0 ? Math.max(0, lineWidth - contentWidth) : 0;
+        if (maxScroll <= 0) return;
 
-                        long scrollDuration = duration - startDelay - endDelay;
-                        if (scrollDuration <= 0) scrollDuration = 1; // Prevent divide by zero
+        long startTime = currentLyrics.getTime(currentLyricIndex);
+        long nextTime = currentLyrics.getNextTime(currentLyricIndex);
+        long endTime = nextTime >= 0 ? nextTime : startTime + 5000; // Default 5s for last line
 
-                        long currentPosWithinLine = pos - startTime;
-                        float progress = 0f;
+        long duration = endTime - startTime;
+        if (duration <= 0) {
+            maxScroll = 0;
+            return;
+        }
 
-                        if (currentPosWithinLine <= startDelay) {
-                            progress = 0f;
-                        } else if (currentPosWithinLine >= (duration - endDelay)) {
-                            progress = 1f;
-                        } else {
-                            progress = (float) (currentPosWithinLine - startDelay) / scrollDuration;
-                        }
+        long defaultDelay = 1000; // 1 second
+        long minDelay = 200;      // 0.2 second
 
-                        if (progress < 0) progress = 0;
-                        if (progress > 1) progress = 1;
+        // Calculate comfortable scrolling speed
+        // Assume a fast but readable speed: 0.4 px/ms (400 px/s)
+        // This corresponds to roughly 10-15 characters per second on high density screens
+        float speedThreshold = 0.4f;
 
-                        int scrollX = (int) (maxScroll * progress);
-                        tvLyricsCurrent.setScrollX(scrollX);
-                    } else {
-                        tvLyricsCurrent.setScrollX(0);
-                    }
-                } else {
-                     tvLyricsCurrent.setScrollX(0);
-                }
-            }
+        // Minimum time required to scroll the full distance at threshold speed
+        long minScrollTime = (long) (maxScroll / speedThreshold);
+
+        // Remaining time for delays
+        long availableDelay = duration - minScrollTime;
+
+        long startDelay, endDelay;
+
+        if (availableDelay >= defaultDelay * 2) {
+            // Plenty of time, use default delays
+            startDelay = defaultDelay;
+            endDelay = defaultDelay;
+        } else if (availableDelay > minDelay * 2) {
+            // Moderate time, split remaining time
+            startDelay = availableDelay / 2;
+            endDelay = availableDelay / 2;
+        } else {
+            // Tight time, use minimum delays and force faster scrolling
+            startDelay = Math.min(minDelay, duration / 4);
+            endDelay = startDelay;
         }
+
+        scrollStart = startTime + startDelay;
+        scrollDuration = duration - startDelay - endDelay;
+        if (scrollDuration <= 0) scrollDuration = 1; // Prevent divide by zero
+    }
+
+    private int scrollXAt(long pos) {
+        if (maxScroll <= 0) return 0;
+        float progress = (float) (pos - scrollStart) / scrollDuration;
+        if (progress < 0) progress = 0;
+        if (progress > 1) progress = 1;
+        return (int) (maxScroll * progress);
     }
 
     private void updatePlayButtonState(boolean isPlaying) {
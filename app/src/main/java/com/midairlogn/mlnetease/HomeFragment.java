@@ -14,8 +14,6 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,6 +30,14 @@ public class HomeFragment extends Fragment {
     private Button btnPlayPause;
     private Button btnPlayAll;
 
+    // Playlist results stream in batch by batch; a stale generation means the results were superseded
+    private int loadGeneration = 0;
+    // The search / playlist / album request currently loading, cancelled when superseded
+    private RequestHandle pendingLoad;
+    private boolean isPlaylistLoading = false;
+    // True when the play queue was started from a playlist that is still loading
+    private boolean queueFollowsLoading = false;
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -41,7 +47,7 @@ public class HomeFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        neteaseApi = new NeteaseApi(new SettingsManager(requireContext()));
+        neteaseApi = new NeteaseApi(requireContext());
 
         searchInput = view.findViewById(R.id.search_input);
         searchButton = view.findViewById(R.id.search_button);
@@ -64,14 +70,26 @@ public class HomeFragment extends Fragment {
             if (songs != null && !songs.isEmpty()) {
                 MusicPlayerManager.getInstance(getContext()).setPlaylist(songs);
                 MusicPlayerManager.getInstance(getContext()).play(0);
+                queueFollowsLoading = isPlaylistLoading;
             }
         });
 
-        adapter.setOnItemClickListener(song -> {
+        adapter.setOnItemClickListener((song, index) -> {
             List<Song> songs = adapter.getSongs();
-            int index = songs.indexOf(song);
             MusicPlayerManager.getInstance(getContext()).setPlaylist(songs);
             MusicPlayerManager.getInstance(getContext()).play(index);
+            queueFollowsLoading = isPlaylistLoading;
+        });
+
+        // Long press keeps a song on the device for offline playback
+        adapter.setOnItemLongClickListener(song -> {
+            SongDownloadManager downloads = SongDownloadManager.getInstance(requireContext());
+            if (downloads.getDownloadedFile(song.id) != null) {
+                Toast.makeText(getContext(), "Already downloaded", Toast.LENGTH_SHORT).show();
+            } else {
+                downloads.enqueue(song);
+                Toast.makeText(getContext(), "Downloading " + song.name, Toast.LENGTH_SHORT).show();
+            }
         });
 
         playerContainer.setOnClickListener(v -> {
@@ -104,18 +122,28 @@ public class HomeFragment extends Fragment {
         super.onDestroyView();
         // Remove listeners? Need to keep reference or make anonymous inner class field
         // But for simplicity, we skip removal or implement interface properly
+        if (pendingLoad != null) {
+            pendingLoad.cancel();
+            pendingLoad = null;
+        }
     }
 
     private void performSearch() {
         String input = searchInput.getText().toString().trim();
         if (input.isEmpty()) return;
 
+        // Any new search supersedes a playlist that may still be streaming in
+        loadGeneration++;
+        isPlaylistLoading = false;
+        queueFollowsLoading = false;
+        if (pendingLoad != null) pendingLoad.cancel();
+
         int checkedId = searchTypeGroup.getCheckedRadioButtonId();
         if (checkedId == R.id.radio_song) {
-            neteaseApi.search(input, new NeteaseApi.ApiCallback() {
+            pendingLoad = neteaseApi.search(input, new NeteaseApi.ResultCallback<SearchPage>() {
                 @Override
-                public void onSuccess(String result) {
-                    parseSearchResult(result);
+                public void onSuccess(SearchPage page) {
+                    showSongs(page.songs);
                 }
 
                 @Override
@@ -125,23 +153,41 @@ public class HomeFragment extends Fragment {
             });
         } else if (checkedId == R.id.radio_playlist) {
             String id = extractId(input);
-            neteaseApi.playlistDetail(id, new NeteaseApi.ApiCallback() {
+            int generation = loadGeneration;
+            isPlaylistLoading = true;
+            pendingLoad = neteaseApi.playlistDetail(id, new NeteaseApi.PlaylistCallback() {
                 @Override
-                public void onSuccess(String result) {
-                    parsePlaylistResult(result);
+                public void onSongs(List<Song> songs, int loaded, int total) {
+                    if (generation != loadGeneration) return;
+                    appendPlaylistSongs(songs, loaded == songs.size());
+                }
+
+                @Override
+                public void onComplete(int loaded) {
+                    if (generation != loadGeneration) return;
+                    isPlaylistLoading = false;
+                    queueFollowsLoading = false;
+                    if (loaded == 0) {
+                        adapter.setSongs(new ArrayList<>());
+                        btnPlayAll.setVisibility(View.GONE);
+                        Toast.makeText(getContext(), "No songs found", Toast.LENGTH_SHORT).show();
+                    }
                 }
 
                 @Override
                 public void onError(String error) {
+                    if (generation != loadGeneration) return;
+                    isPlaylistLoading = false;
+                    queueFollowsLoading = false;
                     Toast.makeText(getContext(), "Error: " + error, Toast.LENGTH_SHORT).show();
                 }
             });
         } else if (checkedId == R.id.radio_album) {
             String id = extractId(input);
-            neteaseApi.albumDetail(id, new NeteaseApi.ApiCallback() {
+            pendingLoad = neteaseApi.albumDetail(id, new NeteaseApi.ResultCallback<AlbumResult>() {
                 @Override
-                public void onSuccess(String result) {
-                    parseAlbumResult(result);
+                public void onSuccess(AlbumResult album) {
+                    showSongs(album.songs);
                 }
 
                 @Override
@@ -167,84 +213,21 @@ public class HomeFragment extends Fragment {
         return input;
     }
 
-    private void parsePlaylistResult(String json) {
-        try {
-            JSONObject root = new JSONObject(json);
-            if (!root.has("songs")) {
-                Toast.makeText(getContext(), "No songs found", Toast.LENGTH_SHORT).show();
-                return;
-            }
-            JSONArray songsArray = root.getJSONArray("songs");
-            updateList(songsArray);
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(getContext(), "Parse error", Toast.LENGTH_SHORT).show();
+    private void appendPlaylistSongs(List<Song> songs, boolean isFirstBatch) {
+        if (isFirstBatch) {
+            adapter.setSongs(songs);
+            btnPlayAll.setVisibility(View.VISIBLE);
+            return;
         }
-    }
-
-    private void parseAlbumResult(String json) {
-        try {
-            JSONObject root = new JSONObject(json);
-            if (!root.has("album")) return;
-            JSONObject album = root.getJSONObject("album");
-            if (!album.has("songs")) return;
-            JSONArray songsArray = album.getJSONArray("songs");
-            updateList(songsArray);
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(getContext(), "Parse error", Toast.LENGTH_SHORT).show();
+        adapter.addSongs(songs);
+        if (queueFollowsLoading) {
+            // "Play all" was pressed before the playlist finished loading
+            MusicPlayerManager.getInstance(getContext()).addAllToPlaylist(songs);
         }
     }
 
-    private void updateList(JSONArray songsArray) throws Exception {
-        List<Song> songs = new ArrayList<>();
-        for (int i = 0; i < songsArray.length(); i++) {
-            JSONObject obj = songsArray.getJSONObject(i);
-            String id = String.valueOf(obj.opt("id"));
-            String name = obj.optString("name");
-            String artists = obj.optString("artists");
-            String album = obj.optString("album");
-            String picUrl = obj.optString("picUrl");
-
-            songs.add(new Song(id, name, artists, album, picUrl));
-        }
+    private void showSongs(List<Song> songs) {
         adapter.setSongs(songs);
         btnPlayAll.setVisibility(songs.isEmpty() ? View.GONE : View.VISIBLE);
     }
-
-    private void parseSearchResult(String json) {
-        try {
-            JSONObject root = new JSONObject(json);
-            if (!root.has("result")) return;
-            JSONObject res = root.getJSONObject("result");
-            if (!res.has("songs")) return;
-
-            JSONArray songsArray = res.getJSONArray("songs");
-            List<Song> songs = new ArrayList<>();
-            for (int i = 0; i < songsArray.length(); i++) {
-                JSONObject obj = songsArray.getJSONObject(i);
-                String id = String.valueOf(obj.getInt("id"));
-                String name = obj.getString("name");
-
-                StringBuilder artists = new StringBuilder();
-                JSONArray ar = obj.getJSONArray("ar");
-                for (int k = 0; k < ar.length(); k++) {
-                    if (k > 0) artists.append("/");
-                    artists.append(ar.getJSONObject(k).getString("name"));
-                }
-
-                JSONObject al = obj.getJSONObject("al");
-                String album = al.getString("name");
-                String picUrl = al.optString("picUrl", "");
-
-                songs.add(new Song(id, name, artists.toString(), album, picUrl));
-            }
-
-            adapter.setSongs(songs);
-            btnPlayAll.setVisibility(songs.isEmpty() ? View.GONE : View.VISIBLE);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
 }
\ No newline at end of file
@@ -46,7 +46,7 @@ public class ImageDetailActivity extends AppCompatActivity {
     }
 
     private void loadImage(String urlString) {
-        new Thread(() -> {
+        AppExecutors.image().execute(() -> {
             try {
                 URL url = new URL(urlString);
                 HttpURLConnection connection = (HttpURLConnection) url.openConnection();
@@ -62,13 +62,13 @@ public class ImageDetailActivity extends AppCompatActivity {
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        }).start();
+        });
     }
 
     private void downloadImage() {
         if (currentBitmap == null) return;
 
-        new Thread(() -> {
+        AppExecutors.diskIO().execute(() -> {
             try {
                 String filename = "netease_" + System.currentTimeMillis() + ".jpg";
 
@@ -112,6 +112,6 @@ public class ImageDetailActivity extends AppCompatActivity {
                 e.printStackTrace();
                 runOnUiThread(() -> Toast.makeText(this, "Save Failed: " + e.getMessage(), Toast.LENGTH_SHORT).show());
             }
-        }).start();
+        });
     }
 }
@@ -0,0 +1,91 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.util.AttributeSet;
+import android.view.Gravity;
+import androidx.appcompat.widget.AppCompatTextView;
+
+/**
+ * TextView that paints the part of its text already sung in a second color, for word-timed
+ * lyrics. The sung part is a char count with a fraction (see {@link LyricTimeline.Cursor#sungAt}),
+ * so the highlight moves smoothly through each word. Setting it every frame only invalidates:
+ * the text is laid out once and drawing allocates nothing.
+ */
+public class KaraokeTextView extends AppCompatTextView {
+    private float sungChars = -1;
+    private int sungColor = 0xFFFFFFFF;
+
+    public KaraokeTextView(Context context) {
+        super(context);
+    }
+
+    public KaraokeTextView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public KaraokeTextView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    // Chars of the text sung so far; negative turns the highlight off
+    public void setSungChars(float chars) {
+        if (chars == sungChars) return;
+        sungChars = chars;
+        invalidate();
+    }
+
+    public void setSungColor(int color) {
+        if (color == sungColor) return;
+        sungColor = color;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        Layout layout = getLayout();
+        if (sungChars <= 0 || layout == null) return;
+
+        int length = getText().length();
+        int offset = Math.min((int) sungChars, length);
+        float fraction = offset < length ? sungChars - offset : 0f;
+        int sungLine = layout.getLineForOffset(offset);
+        float x = layout.getPrimaryHorizontal(offset);
+        if (fraction > 0) {
+            // Next char's edge, or the line's end if it wraps onto the next line
+            float nextX = offset + 1 < layout.getLineEnd(sungLine) || sungLine == layout.getLineCount() - 1
+                    ? layout.getPrimaryHorizontal(offset + 1)
+                    : layout.getLineRight(sungLine);
+            x += (nextX - x) * fraction;
+        }
+
+        int saveCount = canvas.save();
+        // Same content area TextView draws into
+        int top = getExtendedPaddingTop();
+        canvas.clipRect(getScrollX() + getCompoundPaddingLeft(), getScrollY() + top,
+                getScrollX() + getWidth() - getCompoundPaddingRight(),
+                getScrollY() + getHeight() - getExtendedPaddingBottom());
+        canvas.translate(getCompoundPaddingLeft(), top + getVerticalOffset(layout));
+
+        getPaint().setColor(sungColor);
+        for (int line = 0; line <= sungLine; line++) {
+            canvas.save();
+            float right = line < sungLine ? layout.getLineRight(line) : x;
+            canvas.clipRect(layout.getLineLeft(line), layout.getLineTop(line), right, layout.getLineBottom(line));
+            layout.draw(canvas);
+            canvas.restore();
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    // Where TextView puts the layout vertically inside the padding, per gravity
+    private int getVerticalOffset(Layout layout) {
+        int gravity = getGravity() & Gravity.VERTICAL_GRAVITY_MASK;
+        if (gravity == Gravity.TOP) return 0;
+        int space = getMeasuredHeight() - getExtendedPaddingTop() - getExtendedPaddingBottom() - layout.getHeight();
+        if (space <= 0) return 0;
+        return gravity == Gravity.BOTTOM ? space : space / 2;
+    }
+}
@@ -0,0 +1,22 @@
+package com.midairlogn.mlnetease;
+
+public class Lyric {
+    public String lyric;
+    public String tlyric;
+    // Word-timed lyrics, empty when the song has none
+    public String yrc;
+
+    public Lyric(String lyric, String tlyric, String yrc) {
+        this.lyric = lyric;
+        this.tlyric = tlyric;
+        this.yrc = yrc;
+    }
+
+    public boolean isEmpty() {
+        return isBlank(lyric) && isBlank(tlyric) && isBlank(yrc);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
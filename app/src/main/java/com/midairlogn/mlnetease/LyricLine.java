@@ -1,11 +0,0 @@
-package com.midairlogn.mlnetease;
-
-public class LyricLine {
-    public long time;
-    public String text;
-
-    public LyricLine(long time, String text) {
-        this.time = time;
-        this.text = text;
-    }
-}
@@ -0,0 +1,241 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Lyrics archive keyed by song id. Lyrics never change for a given id, so once fetched they are
+ * kept as one small gzip file per song, with an in-memory LRU of recently used entries in front.
+ * The archive is bounded by DISK_BUDGET_BYTES; the least recently used files are evicted first.
+ * Disk access blocks, so {@link #get} and {@link #put} must not be called from the main thread.
+ */
+public class LyricStore {
+    private static final String TAG = "LyricStore";
+    private static final String DIR_NAME = "lyrics";
+    private static final String SUFFIX = ".lrc.gz";
+
+    // File layout (inside gzip): magic, version, then lrc, tlyric and yrc as length-prefixed UTF-8.
+    // Version 1 files lack yrc; they fail to read, are dropped and fetched again.
+    private static final int MAGIC = 0x4D4C4C59; // "MLLY"
+    private static final int VERSION = 2;
+
+    private static final long DISK_BUDGET_BYTES = 8L * 1024 * 1024;
+    private static final int MEMORY_BUDGET_CHARS = 256 * 1024;
+
+    private static LyricStore instance;
+
+    private final File dir;
+    private final LruCache<String, Lyric> memory = new LruCache<String, Lyric>(MEMORY_BUDGET_CHARS) {
+        @Override
+        protected int sizeOf(String key, Lyric value) {
+            return value.lyric.length() + value.tlyric.length() + value.yrc.length() + 1;
+        }
+    };
+
+    // Disk index in access order: id -> file size. Built lazily from the directory listing.
+    private LinkedHashMap<String, Long> index;
+    private long diskBytes = 0;
+
+    public static synchronized LyricStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new LyricStore(new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    private LyricStore(File dir) {
+        this.dir = dir;
+    }
+
+    // Memory-only lookup, cheap enough for any thread
+    public Lyric peek(String id) {
+        return memory.get(id);
+    }
+
+    // Returns the stored lyric, or null when this id has never been archived
+    public Lyric get(String id) {
+        Lyric lyric = memory.get(id);
+        if (lyric != null) return lyric;
+
+        File file = fileFor(id);
+        synchronized (this) {
+            ensureIndex();
+            if (index.get(id) == null) return null;
+            // Touch so the entry moves to the most recently used end
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        try {
+            lyric = read(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable lyric file " + file.getName() + ": " + e.getMessage());
+            remove(id);
+            return null;
+        }
+        memory.put(id, lyric);
+        return lyric;
+    }
+
+    public void put(String id, Lyric lyric) {
+        // Ids become file names; anything but a plain numeric id is not archived
+        if (id == null || !id.matches("\\d{1,18}")) return;
+        Lyric normalized = new Lyric(lyric.lyric != null ? lyric.lyric : "",
+                lyric.tlyric != null ? lyric.tlyric : "",
+                lyric.yrc != null ? lyric.yrc : "");
+        memory.put(id, normalized);
+
+        File file = fileFor(id);
+        File tmp = new File(dir, id + SUFFIX + ".tmp");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            // The index scan deletes temp files, so it must have run before this one is created
+            synchronized (this) {
+                ensureIndex();
+            }
+            write(tmp, normalized);
+            synchronized (this) {
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Cannot rename " + tmp.getName());
+                }
+                Long previous = index.remove(id);
+                if (previous != null) diskBytes -= previous;
+                long size = file.length();
+                index.put(id, size);
+                diskBytes += size;
+                trimToBudget();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Lyric write failed for " + id + ": " + e.getMessage());
+            tmp.delete();
+        }
+    }
+
+    public void putAsync(String id, Lyric lyric) {
+        AppExecutors.diskIO().execute(() -> put(id, lyric));
+    }
+
+    public synchronized void clear() {
+        memory.evictAll();
+        ensureIndex();
+        for (String id : index.keySet()) {
+            fileFor(id).delete();
+        }
+        index.clear();
+        diskBytes = 0;
+    }
+
+    public synchronized long getDiskBytes() {
+        ensureIndex();
+        return diskBytes;
+    }
+
+    public synchronized int getDiskEntryCount() {
+        ensureIndex();
+        return index.size();
+    }
+
+    private synchronized void remove(String id) {
+        ensureIndex();
+        Long size = index.remove(id);
+        if (size != null) diskBytes -= size;
+        fileFor(id).delete();
+    }
+
+    private void trimToBudget() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (diskBytes > DISK_BUDGET_BYTES && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            fileFor(eldest.getKey()).delete();
+            diskBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private void ensureIndex() {
+        if (index != null) return;
+        index = new LinkedHashMap<>(64, 0.75f, true);
+        diskBytes = 0;
+
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        // Oldest first so iteration order matches least recently used
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(SUFFIX)) {
+                // Leftover temp file from an interrupted write. No put() can be writing one yet:
+                // each runs this scan first, under the same lock.
+                file.delete();
+                continue;
+            }
+            long size = file.length();
+            index.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            diskBytes += size;
+        }
+        trimToBudget();
+    }
+
+    private File fileFor(String id) {
+        return new File(dir, id + SUFFIX);
+    }
+
+    private static void write(File file, Lyric lyric) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, lyric.lyric);
+            writeString(out, lyric.tlyric);
+            writeString(out, lyric.yrc);
+        }
+    }
+
+    private static Lyric read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+            String lrc = readString(in);
+            String tlyric = readString(in);
+            String yrc = readString(in);
+            return new Lyric(lrc, tlyric, yrc);
+        }
+    }
+
+    // writeUTF is limited to 64 KB, which long lyrics with translations can exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 4 * 1024 * 1024) {
+            throw new IOException("Bad length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
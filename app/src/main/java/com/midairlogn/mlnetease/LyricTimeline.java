@@ -0,0 +1,658 @@
+package com.midairlogn.mlnetease;
+
+import java.util.Arrays;
+
+/**
+ * Parsed LRC lyrics: line start times in a sorted long array and the line texts in a parallel
+ * table. A line tagged with several timestamps ([00:12.00][01:30.00]chorus) appears once per
+ * timestamp, sharing its text, and an [offset:] tag is applied to every time. A translation, when
+ * given, is aligned to the lines by timestamp. Immutable, so one instance can be shared by every
+ * view showing the song.
+ *
+ * Built from Netease's word-timed yrc lyrics, lines also carry per-word timing, kept as flat int
+ * arrays over all words of the song rather than an object per word.
+ *
+ * Looking up the line at a position is a binary search ({@link #indexAt}); a {@link Cursor} does
+ * it in O(1) while playback moves forward normally, and the same goes for words.
+ */
+public final class LyricTimeline {
+
+    public static final LyricTimeline EMPTY = new LyricTimeline(new long[0], new String[0], null, null);
+
+    // A translated line this close to an original one belongs to it. The translation is timed
+    // like the LRC, which yrc lines can start a little before or after.
+    private static final long ALIGN_TOLERANCE_MS = 100;
+    private static final long YRC_ALIGN_TOLERANCE_MS = 1000;
+
+    private final long[] times;
+    private final String[] texts;
+    // Parallel to texts, null entries for lines without one; null when there is no translation
+    private final String[] translations;
+    // Null when the lines are not word-timed
+    private final Words words;
+
+    /**
+     * Word timing of every line. Line i's words are first[i] until first[i + 1]; word w starts at
+     * starts[w], lasts durations[w] ms and ends at char ends[w] of its line's text.
+     */
+    private static final class Words {
+        final int[] first;
+        final int[] starts;
+        final int[] durations;
+        final int[] ends;
+
+        Words(int[] first, int[] starts, int[] durations, int[] ends) {
+            this.first = first;
+            this.starts = starts;
+            this.durations = durations;
+            this.ends = ends;
+        }
+    }
+
+    private LyricTimeline(long[] times, String[] texts, String[] translations, Words words) {
+        this.times = times;
+        this.texts = texts;
+        this.translations = translations;
+        this.words = words;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return times.length == 0;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public String getText(int index) {
+        return texts[index];
+    }
+
+    // Translation of the line at index, null if it has none
+    public String getTranslation(int index) {
+        return translations != null ? translations[index] : null;
+    }
+
+    public boolean hasTranslation() {
+        return translations != null;
+    }
+
+    // True if the line at index has word timing, so it can be highlighted word by word
+    public boolean hasWords(int index) {
+        return words != null && words.first[index + 1] > words.first[index];
+    }
+
+    public boolean hasWords() {
+        return words != null;
+    }
+
+    // Start of the line after index, or -1 for the last line
+    public long getNextTime(int index) {
+        return index + 1 < times.length ? times[index + 1] : -1;
+    }
+
+    // Line showing at positionMs: the last one starting at or before it, -1 before the first
+    public int indexAt(long positionMs) {
+        int low = 0;
+        int high = times.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= positionMs) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    // This timeline with a line at 0 in front, unless one already starts there
+    public LyricTimeline withLeadingLine(String text) {
+        if (times.length > 0 && times[0] == 0) return this;
+        long[] newTimes = new long[times.length + 1];
+        String[] newTexts = new String[texts.length + 1];
+        newTexts[0] = text;
+        System.arraycopy(times, 0, newTimes, 1, times.length);
+        System.arraycopy(texts, 0, newTexts, 1, texts.length);
+        String[] newTranslations = null;
+        if (translations != null) {
+            newTranslations = new String[translations.length + 1];
+            System.arraycopy(translations, 0, newTranslations, 1, translations.length);
+        }
+        Words newWords = null;
+        if (words != null) {
+            // The new line has no words; the word arrays themselves are shared
+            int[] first = new int[words.first.length + 1];
+            System.arraycopy(words.first, 0, first, 1, words.first.length);
+            newWords = new Words(first, words.starts, words.durations, words.ends);
+        }
+        return new LyricTimeline(newTimes, newTexts, newTranslations, newWords);
+    }
+
+    // Pairs every line with the translated line nearest in time, if within tolerance. Netease's
+    // tlyric reuses the LRC's timestamps, give or take rounding. A translated line is used once.
+    private LyricTimeline withTranslation(LyricTimeline translation, long tolerance) {
+        if (isEmpty() || translation.isEmpty()) return this;
+        long[] other = translation.times;
+        String[] aligned = new String[times.length];
+        boolean any = false;
+        int j = 0;
+        int used = -1;
+        for (int i = 0; i < times.length; i++) {
+            long time = times[i];
+            while (j + 1 < other.length && Math.abs(other[j + 1] - time) <= Math.abs(other[j] - time)) j++;
+            if (j == used || Math.abs(other[j] - time) > tolerance) continue;
+            used = j;
+            String text = translation.texts[j];
+            // "//" marks a line the translator left untranslated
+            if (!"//".equals(text)) {
+                aligned[i] = text;
+                any = true;
+            }
+        }
+        return any ? new LyricTimeline(times, texts, aligned, words) : this;
+    }
+
+    /**
+     * Remembers the line last returned so a position that is still in it, or has moved on to the
+     * next one, is answered without searching. Jumps (seeks) fall back to the binary search.
+     * Not thread-safe; one per consumer.
+     */
+    public static final class Cursor {
+        private LyricTimeline timeline = EMPTY;
+        private int index = -1;
+        // Word last found by sungAt, -1 if none
+        private int word = -1;
+
+        public void reset(LyricTimeline timeline) {
+            this.timeline = timeline;
+            this.index = -1;
+            this.word = -1;
+        }
+
+        public LyricTimeline getTimeline() {
+            return timeline;
+        }
+
+        // Index of the line at positionMs, -1 before the first line
+        public int seek(long positionMs) {
+            long[] times = timeline.times;
+            int i = index;
+            if (i >= 0 && times[i] <= positionMs) {
+                if (i + 1 >= times.length || positionMs < times[i + 1]) return i;
+                if (i + 2 >= times.length || positionMs < times[i + 2]) return index = i + 1;
+            } else if (i < 0 && (times.length == 0 || positionMs < times[0])) {
+                return -1;
+            }
+            return index = timeline.indexAt(positionMs);
+        }
+
+        /**
+         * How much of the line last returned by seek() has been sung at positionMs, in chars of its
+         * text: the words already over count in full, the one being sung by its elapsed fraction.
+         * -1 when that line has no word timing. Does not allocate.
+         */
+        public float sungAt(long positionMs) {
+            Words words = timeline.words;
+            if (index < 0 || words == null) return -1;
+            int from = words.first[index];
+            int to = words.first[index + 1];
+            if (from == to) return -1;
+
+            int[] starts = words.starts;
+            int w = word;
+            if (w < from || w >= to || starts[w] > positionMs) {
+                w = from;
+                if (to - from > 8) w = Math.max(from, searchWord(starts, from, to, positionMs));
+            }
+            while (w + 1 < to && starts[w + 1] <= positionMs) w++;
+            word = w;
+
+            int wordStart = w > from ? words.ends[w - 1] : 0;
+            if (positionMs < starts[w]) return wordStart;
+            int duration = words.durations[w];
+            float fraction = duration > 0 ? Math.min(1f, (float) (positionMs - starts[w]) / duration) : 1f;
+            return wordStart + fraction * (words.ends[w] - wordStart);
+        }
+
+        // Last word in [from, to) starting at or before positionMs, from - 1 if none
+        private static int searchWord(int[] starts, int from, int to, long positionMs) {
+            int low = from;
+            int high = to - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= positionMs) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+    }
+
+    public static LyricTimeline parse(String lrc) {
+        if (lrc == null || lrc.isEmpty()) return EMPTY;
+        return new Parser(lrc).run();
+    }
+
+    // yrc if it has any lines, otherwise lrc; translation (LRC, may be null) is aligned to it
+    public static LyricTimeline parse(String lrc, String translation, String yrc) {
+        LyricTimeline lines = yrc != null && !yrc.isEmpty() ? new YrcParser(yrc).run() : EMPTY;
+        long tolerance = YRC_ALIGN_TOLERANCE_MS;
+        if (lines.isEmpty()) {
+            lines = parse(lrc);
+            tolerance = ALIGN_TOLERANCE_MS;
+        }
+        return lines.withTranslation(parse(translation), tolerance);
+    }
+
+    /**
+     * Single pass over the text, line by line: the leading [..] tags are read as timestamps (or
+     * an offset; other metadata tags are skipped), the rest of the line is its text.
+     */
+    private static final class Parser {
+        private final String s;
+        private final int length;
+        private int pos = 0;
+
+        private long[] times = new long[64];
+        private String[] texts = new String[64];
+        private int count = 0;
+        private boolean sorted = true;
+        private long offset = 0;
+        // Timestamps of the line being read
+        private long[] stamps = new long[4];
+
+        Parser(String s) {
+            this.s = s;
+            this.length = s.length();
+        }
+
+        LyricTimeline run() {
+            while (pos < length) {
+                readLine();
+            }
+            if (count == 0) return EMPTY;
+
+            long[] outTimes = Arrays.copyOf(times, count);
+            String[] outTexts = Arrays.copyOf(texts, count);
+            if (!sorted) sort(outTimes, outTexts);
+            if (offset != 0) {
+                // A positive offset shows the lyrics earlier
+                for (int i = 0; i < count; i++) {
+                    outTimes[i] = Math.max(0, outTimes[i] - offset);
+                }
+            }
+            return new LyricTimeline(outTimes, outTexts, null, null);
+        }
+
+        private void readLine() {
+            int stampCount = 0;
+            while (pos < length && s.charAt(pos) != '\n' && s.charAt(pos) <= ' ') pos++;
+            while (pos < length && s.charAt(pos) == '[') {
+                int close = findTagEnd(pos + 1);
+                if (close < 0) break;
+                long time = parseTime(pos + 1, close);
+                if (time >= 0) {
+                    if (stampCount == stamps.length) stamps = Arrays.copyOf(stamps, stampCount * 2);
+                    stamps[stampCount++] = time;
+                } else {
+                    parseOffset(pos + 1, close);
+                }
+                pos = close + 1;
+            }
+
+            int textStart = pos;
+            while (pos < length && s.charAt(pos) != '\n') pos++;
+            int textEnd = pos;
+            pos++; // Past the newline
+
+            if (stampCount == 0) return;
+            while (textStart < textEnd && s.charAt(textStart) <= ' ') textStart++;
+            while (textEnd > textStart && s.charAt(textEnd - 1) <= ' ') textEnd--;
+            // Lines without text only mark a pause; they are not shown
+            if (textStart == textEnd) return;
+
+            String text = s.substring(textStart, textEnd);
+            for (int i = 0; i < stampCount; i++) {
+                add(stamps[i], text);
+            }
+        }
+
+        // Index of the ']' closing a tag opened just before from, -1 if the line ends first
+        private int findTagEnd(int from) {
+            for (int i = from; i < length; i++) {
+                char c = s.charAt(i);
+                if (c == ']') return i;
+                if (c == '\n') return -1;
+            }
+            return -1;
+        }
+
+        // mm:ss, mm:ss.x, mm:ss.xx or mm:ss.xxx (also with ':' before the fraction); -1 otherwise
+        private long parseTime(int from, int to) {
+            int i = from;
+            long minutes = 0;
+            int digits = 0;
+            while (i < to && isDigit(s.charAt(i))) {
+                minutes = minutes * 10 + (s.charAt(i++) - '0');
+                digits++;
+            }
+            if (digits == 0 || digits > 4 || i >= to || s.charAt(i) != ':') return -1;
+            i++;
+
+            long seconds = 0;
+            digits = 0;
+            while (i < to && isDigit(s.charAt(i))) {
+                seconds = seconds * 10 + (s.charAt(i++) - '0');
+                digits++;
+            }
+            if (digits == 0 || digits > 2) return -1;
+
+            long millis = 0;
+            if (i < to) {
+                char separator = s.charAt(i++);
+                if (separator != '.' && separator != ':') return -1;
+                digits = 0;
+                while (i < to && isDigit(s.charAt(i))) {
+                    // Digits past milliseconds are ignored
+                    if (digits < 3) millis = millis * 10 + (s.charAt(i) - '0');
+                    i++;
+                    digits++;
+                }
+                if (digits == 0 || i != to) return -1;
+                if (digits == 1) millis *= 100;
+                else if (digits == 2) millis *= 10;
+            }
+            return minutes * 60000 + seconds * 1000 + millis;
+        }
+
+        // [offset:+/-ms]; any other tag is metadata and ignored
+        private void parseOffset(int from, int to) {
+            if (!s.regionMatches(true, from, "offset:", 0, 7)) return;
+            int i = from + 7;
+            while (i < to && s.charAt(i) == ' ') i++;
+            boolean negative = false;
+            if (i < to && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                negative = s.charAt(i) == '-';
+                i++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (i < to && isDigit(s.charAt(i)) && digits < 9) {
+                value = value * 10 + (s.charAt(i++) - '0');
+                digits++;
+            }
+            if (digits > 0) offset = negative ? -value : value;
+        }
+
+        private void add(long time, String text) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                texts = Arrays.copyOf(texts, count * 2);
+            }
+            if (count > 0 && time < times[count - 1]) sorted = false;
+            times[count] = time;
+            texts[count] = text;
+            count++;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        // Sorts by time, keeping the file order of lines with the same time: each key packs the
+        // time above the original index, so a plain primitive sort is enough
+        private static void sort(long[] times, String[] texts) {
+            int n = times.length;
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = (times[i] << 20) | i;
+            }
+            Arrays.sort(keys);
+            String[] original = texts.clone();
+            for (int i = 0; i < n; i++) {
+                int from = (int) (keys[i] & 0xFFFFF);
+                times[i] = keys[i] >>> 20;
+                texts[i] = original[from];
+            }
+        }
+    }
+
+    /**
+     * Single pass over yrc text. A lyric line is [start,duration] followed by its words, each a
+     * (start,duration,0) tag and the word's text, all times absolute. Credit lines are JSON,
+     * {"t":start,"c":[{"tx":text},..]}, and become lines without words.
+     */
+    private static final class YrcParser {
+        private final String s;
+        private final int length;
+        private int pos = 0;
+
+        private long[] times = new long[64];
+        private String[] texts = new String[64];
+        private int[] first = new int[65];
+        private int count = 0;
+        private boolean sorted = true;
+
+        private int[] starts = new int[256];
+        private int[] durations = new int[256];
+        private int[] ends = new int[256];
+        private int wordCount = 0;
+
+        private final StringBuilder text = new StringBuilder();
+        // Numbers of the tag read last by readNumbers, and the index of its closing char
+        private final long[] numbers = new long[3];
+        private int tagEnd;
+
+        YrcParser(String s) {
+            this.s = s;
+            this.length = s.length();
+        }
+
+        LyricTimeline run() {
+            while (pos < length) {
+                readLine();
+            }
+            if (count == 0) return EMPTY;
+            first[count] = wordCount;
+
+            long[] outTimes = Arrays.copyOf(times, count);
+            String[] outTexts = Arrays.copyOf(texts, count);
+            int[] outFirst = Arrays.copyOf(first, count + 1);
+            int[] outStarts = Arrays.copyOf(starts, wordCount);
+            int[] outDurations = Arrays.copyOf(durations, wordCount);
+            int[] outEnds = Arrays.copyOf(ends, wordCount);
+            Words words = new Words(outFirst, outStarts, outDurations, outEnds);
+            if (!sorted) words = sort(outTimes, outTexts, words);
+            return new LyricTimeline(outTimes, outTexts, null, words);
+        }
+
+        private void readLine() {
+            int lineEnd = s.indexOf('\n', pos);
+            if (lineEnd < 0) lineEnd = length;
+            int i = pos;
+            while (i < lineEnd && s.charAt(i) <= ' ') i++;
+            if (i < lineEnd) {
+                char c = s.charAt(i);
+                if (c == '[' && readNumbers(i + 1, lineEnd, ']') == 2) {
+                    readWords(numbers[0], tagEnd + 1, lineEnd);
+                } else if (c == '{') {
+                    readCredits(i, lineEnd);
+                }
+            }
+            pos = lineEnd + 1;
+        }
+
+        private void readWords(long lineStart, int from, int to) {
+            text.setLength(0);
+            int firstWord = wordCount;
+            int tag = nextWordTag(from, to);
+            while (tag >= 0) {
+                long start = numbers[0];
+                long duration = numbers[1];
+                int textStart = tagEnd + 1;
+                int next = nextWordTag(textStart, to);
+                text.append(s, textStart, next >= 0 ? next : to);
+                addWord(start, duration, text.length());
+                tag = next;
+            }
+
+            int textLength = text.length();
+            while (textLength > 0 && text.charAt(textLength - 1) <= ' ') textLength--;
+            if (textLength == 0) {
+                wordCount = firstWord; // Nothing to show, as with empty LRC lines
+                return;
+            }
+            for (int w = firstWord; w < wordCount; w++) {
+                if (ends[w] > textLength) ends[w] = textLength;
+            }
+            addLine(lineStart, text.substring(0, textLength), firstWord);
+        }
+
+        // Index of the next (start,duration,x) tag from from on, numbers holding it; -1 if none.
+        // A '(' that does not open such a tag is part of a word.
+        private int nextWordTag(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (s.charAt(i) == '(' && readNumbers(i + 1, to, ')') == 3) return i;
+            }
+            return -1;
+        }
+
+        // Comma-separated numbers from from up to close; their count, or -1 if that is not what
+        // follows
+        private int readNumbers(int from, int to, char close) {
+            int n = 0;
+            int i = from;
+            while (n < numbers.length) {
+                long value = 0;
+                int digits = 0;
+                while (i < to && isDigit(s.charAt(i)) && digits < 12) {
+                    value = value * 10 + (s.charAt(i++) - '0');
+                    digits++;
+                }
+                if (digits == 0 || i >= to) return -1;
+                numbers[n++] = value;
+                char c = s.charAt(i++);
+                if (c == close) {
+                    tagEnd = i - 1;
+                    return n;
+                }
+                if (c != ',') return -1;
+            }
+            return -1;
+        }
+
+        // {"t":12345,"c":[{"tx":"Composer: "},{"tx":"Someone","li":".."}]}
+        private void readCredits(int from, int to) {
+            int t = s.indexOf("\"t\":", from);
+            if (t < 0 || t >= to) return;
+            int i = t + 4;
+            long time = 0;
+            int digits = 0;
+            while (i < to && isDigit(s.charAt(i)) && digits < 12) {
+                time = time * 10 + (s.charAt(i++) - '0');
+                digits++;
+            }
+            if (digits == 0) return;
+
+            text.setLength(0);
+            int tx = s.indexOf("\"tx\":\"", i);
+            while (tx >= 0 && tx < to) {
+                i = readJsonString(tx + 6, to);
+                tx = s.indexOf("\"tx\":\"", i);
+            }
+            String line = text.toString().trim();
+            if (!line.isEmpty()) addLine(time, line, wordCount);
+        }
+
+        // Appends the JSON string body starting at from to text; returns the index after it
+        private int readJsonString(int from, int to) {
+            int i = from;
+            while (i < to) {
+                char c = s.charAt(i++);
+                if (c == '"') break;
+                if (c == '\\' && i < to) {
+                    c = s.charAt(i++);
+                    if (c == 'u' && i + 4 <= to) {
+                        try {
+                            c = (char) Integer.parseInt(s.substring(i, i + 4), 16);
+                        } catch (NumberFormatException e) {
+                            continue;
+                        }
+                        i += 4;
+                    } else if (c == 'n' || c == 't' || c == 'r') {
+                        c = ' ';
+                    }
+                }
+                text.append(c);
+            }
+            return i;
+        }
+
+        private void addWord(long start, long duration, int end) {
+            if (wordCount == starts.length) {
+                starts = Arrays.copyOf(starts, wordCount * 2);
+                durations = Arrays.copyOf(durations, wordCount * 2);
+                ends = Arrays.copyOf(ends, wordCount * 2);
+            }
+            starts[wordCount] = (int) Math.min(start, Integer.MAX_VALUE);
+            durations[wordCount] = (int) Math.min(duration, Integer.MAX_VALUE);
+            ends[wordCount] = end;
+            wordCount++;
+        }
+
+        private void addLine(long time, String line, int firstWord) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                texts = Arrays.copyOf(texts, count * 2);
+                first = Arrays.copyOf(first, count * 2 + 1);
+            }
+            if (count > 0 && time < times[count - 1]) sorted = false;
+            times[count] = time;
+            texts[count] = line;
+            first[count] = firstWord;
+            count++;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        // Sorts lines by time like Parser.sort, carrying each line's words along
+        private static Words sort(long[] times, String[] texts, Words words) {
+            int n = times.length;
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = (times[i] << 20) | i;
+            }
+            Arrays.sort(keys);
+            String[] original = texts.clone();
+            int wordTotal = words.starts.length;
+            int[] first = new int[n + 1];
+            int[] starts = new int[wordTotal];
+            int[] durations = new int[wordTotal];
+            int[] ends = new int[wordTotal];
+            int w = 0;
+            for (int i = 0; i < n; i++) {
+                int from = (int) (keys[i] & 0xFFFFF);
+                times[i] = keys[i] >>> 20;
+                texts[i] = original[from];
+                first[i] = w;
+                int wordFrom = words.first[from];
+                int wordCount = words.first[from + 1] - wordFrom;
+                System.arraycopy(words.starts, wordFrom, starts, w, wordCount);
+                System.arraycopy(words.durations, wordFrom, durations, w, wordCount);
+                System.arraycopy(words.ends, wordFrom, ends, w, wordCount);
+                w += wordCount;
+            }
+            first[n] = w;
+            return new Words(first, starts, durations, ends);
+        }
+    }
+}
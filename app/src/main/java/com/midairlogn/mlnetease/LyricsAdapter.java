@@ -3,19 +3,16 @@ package com.midairlogn.mlnetease;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
-import java.util.ArrayList;
-import java.util.List;
 
 public class LyricsAdapter extends RecyclerView.Adapter<LyricsAdapter.LyricViewHolder> {
 
-    private List<LyricLine> lyrics = new ArrayList<>();
+    private LyricTimeline lyrics = LyricTimeline.EMPTY;
     private int activeIndex = -1;
 
-    public void setLyrics(List<LyricLine> lyrics) {
+    public void setLyrics(LyricTimeline lyrics) {
         this.lyrics = lyrics;
         notifyDataSetChanged();
     }
@@ -37,15 +34,26 @@ public class LyricsAdapter extends RecyclerView.Adapter<LyricsAdapter.LyricViewH
 
     @Override
     public void onBindViewHolder(@NonNull LyricViewHolder holder, int position) {
-        LyricLine line = lyrics.get(position);
-        holder.text.setText(line.text);
+        String translation = lyrics.getTranslation(position);
+        holder.text.setText(translation != null
+                ? lyrics.getText(position) + "\n" + translation
+                : lyrics.getText(position));
 
-        if (position == activeIndex) {
+        if (position == activeIndex && lyrics.hasWords(position)) {
+            // Sung words light up as LyricsFragment advances the highlight each frame
+            holder.text.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.lyrics_normal));
+            holder.text.setSungColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.lyrics_highlight));
+            holder.text.setSungChars(0);
+            holder.text.setAlpha(1.0f);
+            holder.text.setTextSize(16);
+        } else if (position == activeIndex) {
             holder.text.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_primary));
+            holder.text.setSungChars(-1);
             holder.text.setAlpha(1.0f);
             holder.text.setTextSize(16);
         } else {
             holder.text.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_secondary));
+            holder.text.setSungChars(-1);
             holder.text.setAlpha(0.6f);
             holder.text.setTextSize(13);
         }
@@ -57,7 +65,7 @@ public class LyricsAdapter extends RecyclerView.Adapter<LyricsAdapter.LyricViewH
     }
 
     static class LyricViewHolder extends RecyclerView.ViewHolder {
-        TextView text;
+        KaraokeTextView text;
 
         public LyricViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -3,6 +3,7 @@ package com.midairlogn.mlnetease;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,20 +15,19 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.LinearSmoothScroller;
 import androidx.recyclerview.widget.RecyclerView;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-public class LyricsFragment extends Fragment implements MusicPlayerManager.OnSongChangedListener, MusicPlayerManager.OnPlaybackStateChangedListener {
+public class LyricsFragment extends Fragment implements MusicPlayerManager.OnLyricsChangedListener, MusicPlayerManager.OnPlaybackStateChangedListener {
 
     private RecyclerView recyclerView;
     private LyricsAdapter adapter;
-    private List<LyricLine> lyricLines = new ArrayList<>();
+    private LyricTimeline lyricLines = LyricTimeline.EMPTY;
+    private final LyricTimeline.Cursor lyricCursor = new LyricTimeline.Cursor();
     private Handler handler = new Handler(Looper.getMainLooper());
-    private Runnable updateTask;
+    // Runs every frame while playing word-timed lyrics, every LINE_SYNC_MS for plain ones
+    private static final long LINE_SYNC_MS = 300;
+    private final Choreographer.FrameCallback frameCallback = this::onFrame;
+    private boolean updating = false;
     private boolean isTracking = false;
     private int currentLineIndex = -1;
 
@@ -66,10 +66,10 @@ public class LyricsFragment extends Fragment implements MusicPlayerManager.OnSon
         setupTimelineInteraction();
 
         MusicPlayerManager manager = MusicPlayerManager.getInstance(getContext());
-        manager.addOnSongChangedListener(this);
+        manager.addOnLyricsChangedListener(this);
         manager.addOnPlaybackStateChangedListener(this);
 
-        updateLyrics(manager.getCurrentLyric());
+        showLyrics(manager.getCurrentLyrics());
 
         if (manager.isPlaying()) {
             startUpdateTask();
@@ -193,7 +193,7 @@ public class LyricsFragment extends Fragment implements MusicPlayerManager.OnSon
                 // Update Time
                 int pos = recyclerView.getChildAdapterPosition(centerView);
                 if (pos != RecyclerView.NO_POSITION && pos < lyricLines.size()) {
-                    long time = lyricLines.get(pos).time;
+                    long time = lyricLines.getTime(pos);
                     selectedTime = time;
                     lyricsTimelineTime.setText(formatTime(time));
                 }
@@ -213,7 +213,7 @@ public class LyricsFragment extends Fragment implements MusicPlayerManager.OnSon
                 // even if we show dashed line.
                 int pos = recyclerView.getChildAdapterPosition(centerView);
                 if (pos != RecyclerView.NO_POSITION && pos < lyricLines.size()) {
-                    long time = lyricLines.get(pos).time;
+                    long time = lyricLines.getTime(pos);
                     selectedTime = time;
                     lyricsTimelineTime.setText(formatTime(time));
                 }
@@ -233,13 +233,13 @@ public class LyricsFragment extends Fragment implements MusicPlayerManager.OnSon
         super.onDestroyView();
         stopUpdateTask();
         handler.removeCallbacks(hideOverlayRunnable);
-        MusicPlayerManager.getInstance(getContext()).removeOnSongChangedListener(this);
+        MusicPlayerManager.getInstance(getContext()).removeOnLyricsChangedListener(this);
         MusicPlayerManager.getInstance(getContext()).removeOnPlaybackStateChangedListener(this);
     }
 
     @Override
-    public void onSongChanged(Song song) {
-        updateLyrics(MusicPlayerManager.getInstance(getContext()).getCurrentLyric());
+    public void onLyricsChanged(LyricTimeline lyrics) {
+        showLyrics(lyrics);
     }
 
     @Override
@@ -251,37 +251,37 @@ public class LyricsFragment extends Fragment implements MusicPlayerManager.OnSon
         }
     }
 
-    private void updateLyrics(String lyrics) {
-        if (getActivity() == null) return;
-
-        getActivity().runOnUiThread(() -> {
-            lyricLines = LyricsUtils.parseLyrics(lyrics);
-            adapter.setLyrics(lyricLines);
-            currentLineIndex = -1;
-            if (!lyricLines.isEmpty()) {
-                syncLyrics();
-            }
-        });
+    // Main thread; lyrics is the manager's shared timeline
+    private void showLyrics(LyricTimeline lyrics) {
+        if (lyrics == lyricLines) return;
+        lyricLines = lyrics;
+        lyricCursor.reset(lyricLines);
+        adapter.setLyrics(lyricLines);
+        currentLineIndex = -1;
+        if (!lyricLines.isEmpty()) {
+            syncLyrics();
+        }
     }
 
-    // Removed parseLyrics method as it is now in LyricsUtils
-
     private void startUpdateTask() {
-        stopUpdateTask();
-        updateTask = new Runnable() {
-            @Override
-            public void run() {
-                syncLyrics();
-                handler.postDelayed(this, 300); // Check every 300ms
-            }
-        };
-        handler.post(updateTask);
+        if (updating) return;
+        updating = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
     }
 
     private void stopUpdateTask() {
-        if (updateTask != null) {
-            handler.removeCallbacks(updateTask);
-            updateTask = null;
+        if (!updating) return;
+        updating = false;
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (!updating) return;
+        syncLyrics();
+        if (lyricLines.hasWords()) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        } else {
+            Choreographer.getInstance().postFrameCallbackDelayed(frameCallback, LINE_SYNC_MS);
         }
     }
 
@@ -294,19 +294,20 @@ public class LyricsFragment extends Fragment implements MusicPlayerManager.OnSon
 
         int position = manager.getCurrentPosition();
 
-        int newIndex = -1;
-        for (int i = 0; i < lyricLines.size(); i++) {
-            if (lyricLines.get(i).time > position) {
-                break;
-            }
-            newIndex = i;
-        }
+        int newIndex = lyricCursor.seek(position);
 
         if (newIndex != -1 && newIndex != currentLineIndex) {
             currentLineIndex = newIndex;
             adapter.setActiveIndex(currentLineIndex);
             scrollToPosition(currentLineIndex);
         }
+        if (newIndex != -1 && lyricLines.hasWords(newIndex)) {
+            // The bound view of the active line, if on screen; nothing is allocated per frame
+            RecyclerView.ViewHolder holder = recyclerView.findViewHolderForAdapterPosition(newIndex);
+            if (holder instanceof LyricsAdapter.LyricViewHolder) {
+                ((LyricsAdapter.LyricViewHolder) holder).text.setSungChars(lyricCursor.sungAt(position));
+            }
+        }
     }
 
     private void scrollToPosition(int position) {
@@ -2,7 +2,6 @@ package com.midairlogn.mlnetease;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -15,9 +14,6 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 public class MainActivity extends AppCompatActivity implements MusicPlayerManager.OnSongChangedListener, MusicPlayerManager.OnPlaybackStateChangedListener {
 
@@ -137,14 +133,10 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerManage
         // Load Cover
         if (song.picUrl != null && !song.picUrl.equals(currentCoverUrl)) {
             currentCoverUrl = song.picUrl;
-            new Thread(() -> {
+            String coverUrl = currentCoverUrl;
+            AppExecutors.image().execute(() -> {
                 try {
-                    URL url = new URL(currentCoverUrl);
-                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                    connection.setDoInput(true);
-                    connection.connect();
-                    InputStream input = connection.getInputStream();
-                    Bitmap bitmap = BitmapFactory.decodeStream(input);
+                    Bitmap bitmap = CoverLoader.load(coverUrl);
 
                     runOnUiThread(() -> {
                         if (miniPlayerThumb != null) {
@@ -154,7 +146,7 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerManage
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
-            }).start();
+            });
         } else if (song.picUrl == null) {
             miniPlayerThumb.setImageResource(R.drawable.ic_music_note);
             currentCoverUrl = null;
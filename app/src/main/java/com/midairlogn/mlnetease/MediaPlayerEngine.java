@@ -0,0 +1,161 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link PlaybackEngine} on the platform MediaPlayer. Remote tracks are streamed through
+ * {@link StreamProxy}, which supplies the caching MediaPlayer lacks. Supports gapless chaining
+ * through setNextMediaPlayer.
+ */
+public class MediaPlayerEngine implements PlaybackEngine {
+    private static final String TAG = "MediaPlayerEngine";
+
+    private final Context context;
+    private final MediaPlayer player = new MediaPlayer();
+    private Listener listener;
+
+    public MediaPlayerEngine(Context context) {
+        this.context = context;
+
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .build();
+        player.setAudioAttributes(audioAttributes);
+
+        player.setOnPreparedListener(mp -> {
+            if (listener != null) listener.onPrepared(this);
+        });
+        player.setOnCompletionListener(mp -> {
+            if (listener != null) listener.onCompletion(this);
+        });
+        player.setOnErrorListener((mp, what, extra) -> {
+            if (listener != null) listener.onError(this, "what=" + what + ", extra=" + extra);
+            return true;
+        });
+        player.setOnInfoListener((mp, what, extra) -> {
+            if (listener == null) return false;
+            if (what == MediaPlayer.MEDIA_INFO_BUFFERING_START) {
+                listener.onBuffering(this, true);
+            } else if (what == MediaPlayer.MEDIA_INFO_BUFFERING_END) {
+                listener.onBuffering(this, false);
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void prepareStream(String cacheKey, String url) throws IOException {
+        // Stream through the local caching proxy, so the same audio is only downloaded once
+        String proxied = StreamProxy.getInstance(context).proxyUrl(cacheKey, url);
+
+        // Use headers to mimic browser/desktop client to avoid 403 Forbidden from CDN
+        // (the proxy sends its own, these matter when it falls back to the direct url)
+        Map<String, String> headers = new HashMap<>();
+        headers.put("User-Agent", "Mozilla/5.0 (Windows NT 10.0; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Safari/537.36 Chrome/91.0.4472.164 NeteaseMusicDesktop/2.10.2.200154");
+        headers.put("Referer", "https://music.163.com/");
+
+        player.setDataSource(context, Uri.parse(proxied), headers);
+        player.prepareAsync();
+    }
+
+    @Override
+    public void prepareFile(File file) throws IOException {
+        player.setDataSource(file.getPath());
+        player.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        player.start();
+    }
+
+    @Override
+    public void pause() {
+        player.pause();
+    }
+
+    @Override
+    public void seekTo(int msec) {
+        player.seekTo(msec);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        try {
+            return player.isPlaying();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        try {
+            return player.getCurrentPosition();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public int getDuration() {
+        try {
+            return player.getDuration();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        try {
+            player.setVolume(volume, volume);
+        } catch (Exception e) {
+            Log.w(TAG, "setVolume failed", e);
+        }
+    }
+
+    @Override
+    public boolean setNext(PlaybackEngine next) {
+        if (next != null && !(next instanceof MediaPlayerEngine)) return false;
+        try {
+            player.setNextMediaPlayer(next != null ? ((MediaPlayerEngine) next).player : null);
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "setNextMediaPlayer failed", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void reset() {
+        try {
+            if (player.isPlaying()) {
+                player.stop();
+            }
+            player.reset();
+        } catch (Exception e) {
+            Log.w(TAG, "reset failed", e);
+        }
+    }
+
+    @Override
+    public void release() {
+        player.release();
+    }
+}
@@ -1,44 +1,165 @@
 package com.midairlogn.mlnetease;
 
 import android.content.Context;
-import android.media.MediaPlayer;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
-import org.json.JSONObject;
-
+import java.util.function.Consumer;
+
+/**
+ * Owns playback. Every command (play, skip, pause, seek, playlist edits) is posted to a dedicated
+ * player thread and executed there one at a time, and the {@link PlaybackEngine}s are created on
+ * that thread so their callbacks arrive there too. Nothing touches an engine from the main thread.
+ *
+ * Other threads only read published snapshots: every playlist edit publishes a new immutable
+ * {@link PlayQueue}, and position / duration / state are kept in fields the player thread updates.
+ */
 public class MusicPlayerManager {
     public static final int MODE_ORDER = 0;
     public static final int MODE_LOOP_ONE = 1;
     public static final int MODE_LOOP_ALL = 2;
     public static final int MODE_SHUFFLE = 3;
 
+    /**
+     * Where the player is in loading and playing the current track. Only the player thread
+     * changes it.
+     */
+    public enum State {
+        IDLE,       // Nothing loaded
+        RESOLVING,  // Waiting for the stream url
+        PREPARING,  // Url known, the engine is preparing it
+        PLAYING,
+        PAUSED,
+        ERROR       // The track failed to load or play and retrying did not help
+    }
+
     private static MusicPlayerManager instance;
-    private MediaPlayer mediaPlayer;
-    private List<Song> playlist = new ArrayList<>();
-    private int currentIndex = -1;
-    private boolean isPaused = false;
     private Context context;
     private NeteaseApi neteaseApi;
-    private int currentMode = MODE_ORDER;
-    private Random random = new Random();
+    private SettingsManager settingsManager;
+    private SongDownloadManager downloads;
+
+    private final HandlerThread playerThread;
+    private final Handler playerHandler;
+
+    // Published for other threads; written on the player thread (currentMode on the caller's)
+    private volatile State state = State.IDLE;
+    private volatile PlayQueue playlist = PlayQueue.EMPTY;
+    private volatile int currentIndex = -1;
+    // Entry id of the current track; unlike currentIndex it survives edits around it unchanged
+    private volatile long currentEntryId = -1;
+    // The current track's Song as listeners are given it; replaced (in the playlist too) once its
+    // details are resolved
+    private volatile Song currentSong;
+    // Bumped on every switch of the current track, retries included; load callbacks compare it
+    private int loadGeneration = 0;
+    private volatile int currentMode = MODE_ORDER;
+    private volatile int duration = 0;
+    // Position at positionClock (elapsedRealtime); extrapolated while positionRunning
+    private long positionBase = 0;
+    private long positionClock = 0;
+    private boolean positionRunning = false;
+
+    // Everything below is only touched on the player thread
+    private PlaybackEngine engine;
+    private final PlaybackEngine.Listener engineListener = new PlaybackEngine.Listener() {
+        @Override
+        public void onPrepared(PlaybackEngine e) {
+            onPlayerPrepared(e);
+        }
+
+        @Override
+        public void onCompletion(PlaybackEngine e) {
+            onPlayerCompletion(e);
+        }
+
+        @Override
+        public void onError(PlaybackEngine e, String error) {
+            onPlayerError(e, error);
+        }
+
+        @Override
+        public void onBuffering(PlaybackEngine e, boolean buffering) {
+            onPlayerBuffering(e, buffering);
+        }
+    };
+    // Stalls of the current track while playing, for diagnostics
+    private int rebufferCount = 0;
+    private long rebufferMs = 0;
+    private long rebufferStartedAt = 0;
     private int retryCount = 0;
     private static final int MAX_RETRY = 1;
     private int resumePosition = 0;
-    private boolean isCompletionListenerEnabled = false;
+    // False when paused while the track was still loading: it stays paused once prepared
+    private boolean playWhenReady = true;
+    // On resume, re-resolve the url if it would expire within this window
+    private static final long URL_REFRESH_AHEAD_MS = 5 * 60 * 1000;
+    // The published position is re-read from the engine this often while playing
+    private static final long POSITION_SYNC_MS = 1000;
+    private final Runnable positionSyncRunnable = this::syncPositionTick;
+
+    // A skip that follows the previous one within this window waits this long before loading,
+    // so a burst of next/previous presses only loads the track it ends on
+    private static final long SKIP_SETTLE_MS = 150;
+    private long lastSkipAt = 0;
+    private final Runnable loadRunnable = this::loadCurrent;
+    // Loads replaced by a skip; cancelled once the replacement request has been issued
+    private RequestHandle supersededLoads = new RequestHandle();
+
+    // Upcoming track, resolved and prepared ahead of time so the transition is gapless
+    private Prefetch prefetch;
+    // Shuffle mode's play order, kept in step with every playlist edit and track change
+    private final ShuffleOrder shuffleOrder = new ShuffleOrder(new Random());
+    private final Runnable prefetchRunnable = this::startPrefetch;
+
+    // Crossfade: the outgoing engine keeps playing, ramping down, while the new current one ramps up
+    private PlaybackEngine fadingOut;
+    private long fadeStartedAt = 0;
+    private long fadeDurationMs = 0;
+    private static final long CROSSFADE_STEP_MS = 50;
+    // Shorter overlaps are not worth it; the track just ends as usual
+    private static final long MIN_CROSSFADE_MS = 200;
+    // With a crossfade the next track has to be prepared at least this long before the fade begins
+    private static final long CROSSFADE_PREPARE_MARGIN_MS = 10 * 1000;
+    private final Runnable crossfadeRunnable = this::startCrossfade;
+    private final Runnable crossfadeTickRunnable = this::crossfadeTick;
+    // Url, detail and lyric requests of the current track; cancelled when another track supersedes it
+    private RequestHandle currentLoad;
+
+    private static class Prefetch {
+        // Follows playlist edits, like currentIndex
+        int index;
+        final long entryId;
+        Song song;
+        RequestHandle handle;
+        PlaybackEngine player;
+        LyricTimeline lyrics;
+        boolean prepared = false;
+        boolean chained = false;
+        boolean handedOff = false;
+
+        Prefetch(int index, long entryId, Song song) {
+            this.index = index;
+            this.entryId = entryId;
+            this.song = song;
+        }
+    }
 
     // Callbacks
     private List<OnSongChangedListener> songChangedListeners = new ArrayList<>();
     private List<OnPlaybackStateChangedListener> playbackStateChangedListeners = new ArrayList<>();
     private List<OnPlaylistChangedListener> playlistChangedListeners = new ArrayList<>();
     private List<OnPlaybackModeChangedListener> playbackModeChangedListeners = new ArrayList<>();
+    private List<OnLyricsChangedListener> lyricsChangedListeners = new ArrayList<>();
 
     // Current extended info
-    private String currentLyric = "";
-    private String currentTLyric = "";
+    // Parsed once per song (with the translation aligned) and shared by every lyric view
+    private volatile LyricTimeline currentLyrics = LyricTimeline.EMPTY;
 
     public interface OnSongChangedListener {
         void onSongChanged(Song song);
@@ -49,32 +170,54 @@ public class MusicPlayerManager {
     }
 
     public interface OnPlaylistChangedListener {
-        void onPlaylistChanged(List<Song> playlist);
+        // playlist is the queue right after the edit that change describes
+        void onPlaylistChanged(PlayQueue playlist, PlayQueue.Change change);
     }
 
     public interface OnPlaybackModeChangedListener {
         void onPlaybackModeChanged(int mode);
     }
 
+    public interface OnLyricsChangedListener {
+        // EMPTY while the current song's lyrics are loading or when it has none
+        void onLyricsChanged(LyricTimeline lyrics);
+    }
+
     private MusicPlayerManager(Context context) {
         this.context = context.getApplicationContext();
-        this.neteaseApi = new NeteaseApi(new SettingsManager(this.context));
-        mediaPlayer = new MediaPlayer();
-
-        android.media.AudioAttributes audioAttributes = new android.media.AudioAttributes.Builder()
-                .setContentType(android.media.AudioAttributes.CONTENT_TYPE_MUSIC)
-                .setUsage(android.media.AudioAttributes.USAGE_MEDIA)
-                .build();
-        mediaPlayer.setAudioAttributes(audioAttributes);
-
-        mediaPlayer.setOnCompletionListener(mp -> {
-            if (isCompletionListenerEnabled) {
-                playNext();
-            }
-        });
+        this.neteaseApi = new NeteaseApi(this.context);
+        this.settingsManager = new SettingsManager(this.context);
+        this.downloads = SongDownloadManager.getInstance(this.context);
+
+        playerThread = new HandlerThread("ml-player", Process.THREAD_PRIORITY_AUDIO);
+        playerThread.start();
+        playerHandler = new Handler(playerThread.getLooper());
+        // Created on the player thread so its callbacks are delivered there
+        runOnPlayer(() -> engine = createEngine());
+    }
+
+    private void runOnPlayer(Runnable command) {
+        playerHandler.post(command);
     }
 
-    public static MusicPlayerManager getInstance(Context context) {
+    // Player thread. Builds the engine currently selected in the settings.
+    private PlaybackEngine createEngine() {
+        PlaybackEngine created;
+        if (SettingsManager.ENGINE_EXOPLAYER.equals(settingsManager.getPlaybackEngine())) {
+            created = new ExoPlayerEngine(context, settingsManager);
+        } else {
+            created = new MediaPlayerEngine(context);
+        }
+        created.setListener(engineListener);
+        return created;
+    }
+
+    private boolean isSelectedEngine(PlaybackEngine candidate) {
+        boolean exo = SettingsManager.ENGINE_EXOPLAYER.equals(settingsManager.getPlaybackEngine());
+        return (candidate instanceof ExoPlayerEngine) == exo;
+    }
+
+    public static synchronized MusicPlayerManager getInstance(Context context) {
         if (instance == null) {
             instance = new MusicPlayerManager(context);
         }
@@ -82,17 +225,31 @@ public class MusicPlayerManager {
     }
 
     public void setPlaylist(List<Song> songs) {
-        this.playlist = new ArrayList<>(songs);
-        this.currentIndex = -1; // Reset current index since playlist changed
-        notifyPlaylistChanged();
+        PlayQueue snapshot = PlayQueue.of(songs);
+        runOnPlayer(() -> {
+            playlist = snapshot;
+            setCurrentIndex(-1); // Reset current index since playlist changed
+            shuffleOrder.reset(snapshot.size(), -1);
+            discardPrefetch();
+            notifyPlaylistChanged(PlayQueue.Change.reset());
+        });
     }
 
-    public List<Song> getPlaylist() {
+    // Immutable snapshot; edits made through this class publish a new one
+    public PlayQueue getPlaylist() {
         return playlist;
     }
 
     public void setPlaybackMode(int mode) {
+        // Published right away so callers reading it back see the new mode
         this.currentMode = mode;
+        runOnPlayer(() -> {
+            // Shuffling starts a new round from the current track
+            if (mode == MODE_SHUFFLE) shuffleOrder.reset(playlist.size(), currentIndex);
+            // The upcoming track depends on the mode
+            discardPrefetch();
+            schedulePrefetch();
+        });
         notifyPlaybackModeChanged(mode);
     }
 
@@ -116,254 +273,822 @@ public class MusicPlayerManager {
         return currentIndex;
     }
 
+    // Stable id (see PlayQueue) of the current entry, -1 if none
+    public long getCurrentEntryId() {
+        return currentEntryId;
+    }
+
+    // Player thread. Switches to another entry; edits that only shift it adjust currentIndex directly.
+    private void setCurrentIndex(int index) {
+        long entryId = index >= 0 ? playlist.getEntryId(index) : -1;
+        setCurrent(index, entryId, index >= 0 ? playlist.get(index) : null);
+    }
+
+    private void setCurrent(int index, long entryId, Song song) {
+        loadGeneration++;
+        currentSong = song;
+        currentIndex = index;
+        currentEntryId = entryId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
     public void addToPlaylist(Song song) {
-        playlist.add(song);
-        notifyPlaylistChanged();
+        runOnPlayer(() -> {
+            int position = playlist.size();
+            playlist = playlist.insert(position, song);
+            shuffleOrder.insert(position);
+            onUpcomingMayHaveChanged();
+            notifyPlaylistChanged(PlayQueue.Change.inserted(position, 1));
+        });
+    }
+
+    public void addAllToPlaylist(List<Song> songs) {
+        if (songs.isEmpty()) return;
+        List<Song> added = new ArrayList<>(songs);
+        runOnPlayer(() -> {
+            int position = playlist.size();
+            playlist = playlist.insertAll(position, added);
+            for (int i = position; i < playlist.size(); i++) {
+                shuffleOrder.insert(i);
+            }
+            onUpcomingMayHaveChanged();
+            notifyPlaylistChanged(PlayQueue.Change.inserted(position, added.size()));
+        });
     }
 
     public void removeFromPlaylist(int index) {
-        if (index < 0 || index >= playlist.size()) return;
+        runOnPlayer(() -> {
+            if (index < 0 || index >= playlist.size()) return;
+
+            playlist = playlist.removeAt(index);
+            shuffleOrder.remove(index);
+            PlayQueue.Change change = PlayQueue.Change.removed(index, 1);
+            if (prefetch != null) {
+                if (prefetch.index == index) {
+                    discardPrefetch();
+                } else if (prefetch.index > index) {
+                    prefetch.index--;
+                }
+            }
 
-        boolean wasPlaying = (index == currentIndex);
-        playlist.remove(index);
-
-        if (index < currentIndex) {
-            currentIndex--;
-        } else if (index == currentIndex) {
-            // Removed currently playing song
-            if (playlist.isEmpty()) {
-                currentIndex = -1;
-                pause(); // Stop playback
-                notifySongChanged(null);
-            } else {
-                // Play next or previous depending on availability
-                if (currentIndex >= playlist.size()) {
-                    currentIndex = 0; // Wrap to start if was last
+            if (index < currentIndex) {
+                currentIndex--;
+            } else if (index == currentIndex) {
+                // Removed currently playing song
+                if (playlist.isEmpty()) {
+                    setCurrentIndex(-1);
+                    stop();
+                    notifySongChanged(null);
+                } else {
+                    // Play next or previous depending on availability
+                    int target = currentIndex >= playlist.size() ? 0 : currentIndex; // Wrap to start if was last
+                    // Shuffle continues with what would have followed the removed track
+                    if (currentMode == MODE_SHUFFLE) target = shuffleOrder.peekNext();
+                    setCurrentIndex(-1); // Force a reload, the index now holds another song
+                    play(target, false);
                 }
-                play(currentIndex);
             }
-        }
-        notifyPlaylistChanged();
+            onUpcomingMayHaveChanged();
+            notifyPlaylistChanged(change);
+        });
     }
 
     public void moveInPlaylist(int from, int to) {
-        if (from < 0 || from >= playlist.size() || to < 0 || to >= playlist.size()) return;
-
-        // Track current song
-        Song currentSong = null;
-        if (currentIndex >= 0 && currentIndex < playlist.size()) {
-            currentSong = playlist.get(currentIndex);
-        }
-
-        if (from < to) {
-            for (int i = from; i < to; i++) {
-                Collections.swap(playlist, i, i + 1);
+        runOnPlayer(() -> {
+            // Every call is answered with a change, even when nothing moved, so a view that
+            // applied the move itself knows the manager has caught up
+            if (from < 0 || from >= playlist.size() || to < 0 || to >= playlist.size()) {
+                notifyPlaylistChanged(PlayQueue.Change.reset());
+                return;
             }
-        } else {
-            for (int i = from; i > to; i--) {
-                Collections.swap(playlist, i, i - 1);
+            if (from == to) {
+                notifyPlaylistChanged(PlayQueue.Change.moved(from, to));
+                return;
             }
-        }
-
-        // Update currentIndex
-        if (currentSong != null) {
-            currentIndex = playlist.indexOf(currentSong);
-        }
-        notifyPlaylistChanged();
+            playlist = playlist.move(from, to);
+            shuffleOrder.move(from, to);
+
+            // Keep following the current song, and the prefetched one, which stays valid if it
+            // is still the next one
+            currentIndex = indexAfterMove(currentIndex, from, to);
+            if (prefetch != null) prefetch.index = indexAfterMove(prefetch.index, from, to);
+            onUpcomingMayHaveChanged();
+            notifyPlaylistChanged(PlayQueue.Change.moved(from, to));
+        });
     }
 
 
+    private static int indexAfterMove(int index, int from, int to) {
+        if (index == from) return to;
+        if (from < index && index <= to) return index - 1;
+        if (to <= index && index < from) return index + 1;
+        return index;
+    }
+
     public void play(int index) {
-        play(index, false);
+        runOnPlayer(() -> play(index, false));
     }
 
+    // Player thread. Switches to index at once (old track stopped, UI told), but while skips keep
+    // arriving the actual load is deferred, so only the track a burst ends on is fetched.
     private void play(int index, boolean isRetry) {
         if (index < 0 || index >= playlist.size()) return;
+        finishCrossfade();
 
         // If it is not a retry, reset retry count and resume position
         if (!isRetry) {
             retryCount = 0;
             resumePosition = 0;
+            shuffleOrder.moveTo(index);
+            playWhenReady = true;
+            // Skipping to the track that is already prepared: switch over without loading it again
+            if (startPrefetched(index)) return;
+            // The current track again (loop-one, replay): restart it from what is already loaded
+            if (index == currentIndex && hasPreparedTrack()) {
+                replayCurrent();
+                return;
+            }
         }
+        // Cancelled only after the new request is issued, so a call both loads share keeps going
+        supersededLoads.add(takeLoads());
+        unscheduleTransition();
+        playerHandler.removeCallbacks(loadRunnable);
+        discardPrefetch();
 
         boolean isNewSong = (index != currentIndex);
-        currentIndex = index;
-        // Temporarily disable completion listener to prevent race conditions during song loading/switching
-        isCompletionListenerEnabled = false;
+        setCurrentIndex(index);
+        // Completion and prefetch are ignored until the new track is prepared
+        setState(State.RESOLVING);
 
         if (isNewSong) {
             // Stop previous playback to prevent onCompletion events from firing for the old song
             // while we are loading the new one. This prevents race conditions where the old song
             // finishes and triggers playNext() -> play(index+1).
-            try {
-                if (mediaPlayer.isPlaying()) {
-                    mediaPlayer.stop();
-                }
-                mediaPlayer.reset();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            engine.reset();
+            duration = 0;
+            syncPosition(0, false);
         }
 
-        Song song = playlist.get(index);
+        Song song = currentSong;
 
         // Notify change immediately so UI updates (cover, title)
         notifySongChanged(song);
-        currentLyric = "Loading...";
+        publishLyrics(LyricTimeline.EMPTY);
+
+        long now = SystemClock.uptimeMillis();
+        boolean inBurst = !isRetry && now - lastSkipAt < SKIP_SETTLE_MS;
+        lastSkipAt = now;
+        playerHandler.postDelayed(loadRunnable, inBurst ? SKIP_SETTLE_MS : 0);
+    }
 
-        // Fetch full info
-        neteaseApi.getSongFullInfo(song.id, new NeteaseApi.ApiCallback() {
+    // Player thread. Resolves and prepares the track play() switched to.
+    private void loadCurrent() {
+        Song song = getCurrentSong();
+        if (state != State.RESOLVING || song == null) return;
+        // Edits around the track shift currentIndex but keep the generation, so callbacks
+        // compare only the generation and find the row again by entry id
+        int generation = loadGeneration;
+        long entryId = currentEntryId;
+
+        // A downloaded song starts right away without waiting for a url
+        boolean playingLocal = downloads.getDownloadedFile(song.id) != null;
+        if (playingLocal) {
+            playUrl(new SongUrl(song.id, "", 0, ""));
+        }
+
+        // Fetch full info. The url arrives on its own so playback can start before
+        // detail and lyrics have been resolved. Results arrive on the main thread.
+        RequestHandle superseded = supersededLoads;
+        supersededLoads = new RequestHandle();
+        currentLoad = neteaseApi.getSongFullInfo(song.id, !playingLocal, new NeteaseApi.SongInfoCallback() {
             @Override
-            public void onSuccess(String result) {
-                // Check if the current index is still what we expect
-                if (currentIndex != index) return;
-
-                try {
-                    JSONObject root = new JSONObject(result);
-                    if (root.getInt("status") == 200) {
-                        String url = root.optString("url", "");
-                        currentLyric = root.optString("lyric", "");
-                        currentTLyric = root.optString("tlyric", "");
-
-                        // Update Song object with better info if available
-                        song.picUrl = root.optString("pic", song.picUrl);
-                        song.name = root.optString("name", song.name);
-                        song.artists = root.optString("ar_name", song.artists);
-                        song.album = root.optString("al_name", song.album);
-
-                        notifySongChanged(song); // Notify again with full info
-
-                        if (!url.isEmpty()) {
-                            android.util.Log.d("MusicPlayerManager", "Playing URL: " + url);
-                            playUrl(url);
-                        } else {
-                            android.util.Log.e("MusicPlayerManager", "Song URL is empty. Check VIP/Copyright status.");
-                            // Handle error (e.g. notify listeners of error)
-                        }
+            public void onUrl(SongUrl songUrl) {
+                runOnPlayer(() -> {
+                    // Check if the current track is still what we expect
+                    if (!isCurrent(generation) || playingLocal || state != State.RESOLVING) return;
+
+                    if (songUrl.isPlayable()) {
+                        android.util.Log.d("MusicPlayerManager", "Playing URL: " + songUrl.url);
+                        playUrl(songUrl);
+                    } else {
+                        android.util.Log.e("MusicPlayerManager", "Song URL is empty. Check VIP/Copyright status.");
+                        fail();
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                });
+            }
+
+            @Override
+            public void onDetail(Song detail) {
+                runOnPlayer(() -> {
+                    if (!isCurrent(generation)) return;
+
+                    Song resolved = applyDetail(entryId, song, detail);
+                    currentSong = resolved;
+                    notifySongChanged(resolved); // Notify again with full info
+                });
+            }
+
+            @Override
+            public void onLyric(Lyric lyric) {
+                parseLyrics(lyric, lyrics -> {
+                    if (isCurrent(generation)) publishLyrics(lyrics);
+                });
             }
 
             @Override
             public void onError(String error) {
-                // Handle error
+                android.util.Log.e("MusicPlayerManager", "getSongFullInfo error: " + error);
+                runOnPlayer(() -> {
+                    if (isCurrent(generation) && !playingLocal && state == State.RESOLVING) fail();
+                });
             }
         });
+        superseded.cancel();
     }
 
-    private void playUrl(String url) {
-        if (url == null || url.trim().isEmpty() || "null".equals(url)) {
-            android.util.Log.e("MusicPlayerManager", "playUrl called with invalid url: " + url);
-            return;
+    // Parses on the api pool rather than the audio-priority player thread, then hands the
+    // timeline to onParsed back on the player thread, where it must check it is still wanted
+    private void parseLyrics(Lyric lyric, Consumer<LyricTimeline> onParsed) {
+        AppExecutors.api().execute(() -> {
+            LyricTimeline lyrics = LyricTimeline.parse(lyric.lyric, lyric.tlyric, lyric.yrc);
+            runOnPlayer(() -> onParsed.accept(lyrics));
+        });
+    }
+
+    private boolean isCurrent(int generation) {
+        return loadGeneration == generation;
+    }
+
+    private void setState(State newState) {
+        if (state == newState) return;
+        android.util.Log.d("MusicPlayerManager", "State " + state + " -> " + newState);
+        state = newState;
+        playerHandler.removeCallbacks(positionSyncRunnable);
+        if (newState == State.PLAYING) {
+            playerHandler.postDelayed(positionSyncRunnable, POSITION_SYNC_MS);
         }
-        try {
-            mediaPlayer.reset();
-            // Use headers to mimic browser/desktop client to avoid 403 Forbidden from CDN
-            java.util.Map<String, String> headers = new java.util.HashMap<>();
-            headers.put("User-Agent", "Mozilla/5.0 (Windows NT 10.0; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Safari/537.36 Chrome/91.0.4472.164 NeteaseMusicDesktop/2.10.2.200154");
-            headers.put("Referer", "https://music.163.com/");
-
-            android.net.Uri uri = android.net.Uri.parse(url);
-            mediaPlayer.setDataSource(context, uri, headers);
-
-            mediaPlayer.prepareAsync();
-            mediaPlayer.setOnPreparedListener(mp -> {
-                if (resumePosition > 0) {
-                    mp.seekTo(resumePosition);
-                    resumePosition = 0;
-                }
-                mp.start();
-                isPaused = false;
-                // Enable completion listener only after successful preparation and start
-                isCompletionListenerEnabled = true;
-                notifyPlaybackStateChanged(true);
-            });
-
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                android.util.Log.e("MusicPlayerManager", "MediaPlayer Error: what=" + what + ", extra=" + extra);
-
-                if (retryCount < MAX_RETRY) {
-                    retryCount++;
-                    android.util.Log.d("MusicPlayerManager", "Retrying playback... Attempt " + retryCount);
-                    // Save position
-                    try {
-                        resumePosition = mp.getCurrentPosition();
-                    } catch (Exception e) {
-                        resumePosition = 0;
-                    }
-                    // Reload current song
-                    play(currentIndex, true);
-                    return true;
-                }
+    }
 
-                // Return true if we handled the error, false otherwise
-                notifyPlaybackStateChanged(false);
-                return true;
-            });
+    // The current track cannot be played
+    private void fail() {
+        unscheduleTransition();
+        setState(State.ERROR);
+        syncPosition(0, false);
+        notifyPlaybackStateChanged(false);
+    }
 
+    // Stop and unload the current track
+    private void stop() {
+        finishCrossfade();
+        playerHandler.removeCallbacks(loadRunnable);
+        unscheduleTransition();
+        takeLoads().cancel();
+        discardPrefetch();
+        engine.reset();
+        setState(State.IDLE);
+        duration = 0;
+        syncPosition(0, false);
+        notifyPlaybackStateChanged(false);
+    }
+
+    // Player thread. Seeks the prepared track back to the start; the url, lyrics and details
+    // stay as they are and nothing is fetched again
+    private void replayCurrent() {
+        engine.seekTo(0);
+        engine.start();
+        setState(State.PLAYING);
+        syncPosition(0, true);
+        notifyPlaybackStateChanged(true);
+        schedulePrefetch();
+    }
+
+    // Detach the pending loads of the current and prefetched tracks into one handle
+    private RequestHandle takeLoads() {
+        RequestHandle loads = new RequestHandle();
+        if (currentLoad != null) {
+            loads.add(currentLoad);
+            currentLoad = null;
+        }
+        if (prefetch != null && prefetch.handle != null) {
+            loads.add(prefetch.handle);
+            prefetch.handle = null;
+        }
+        return loads;
+    }
+
+    // The prefetched track became the current one; its pending detail/lyric now belong to it
+    private void adoptPrefetchLoad(Prefetch next) {
+        if (currentLoad != null) currentLoad.cancel();
+        currentLoad = next.handle;
+        next.handle = null;
+    }
+
+    // Player thread. song with the better info from detail, as a new Song, which also replaces
+    // the playlist entry entryId (if still queued) so every view of the queue shows it
+    private Song applyDetail(long entryId, Song song, Song detail) {
+        Song resolved = new Song(song.id,
+                detail.name.isEmpty() ? song.name : detail.name,
+                detail.artists.isEmpty() ? song.artists : detail.artists,
+                detail.album.isEmpty() ? song.album : detail.album,
+                detail.picUrl.isEmpty() ? song.picUrl : detail.picUrl);
+        int index = indexOfEntry(entryId);
+        if (index >= 0) {
+            playlist = playlist.withSong(index, resolved);
+            notifyPlaylistChanged(PlayQueue.Change.changed(index));
+        }
+        return resolved;
+    }
+
+    // Current position of entryId, or -1. Only the current and prefetched entries have their
+    // position tracked through edits, and only those ever resolve details.
+    private int indexOfEntry(long entryId) {
+        int index = entryId == currentEntryId ? currentIndex
+                : prefetch != null && prefetch.entryId == entryId ? prefetch.index : -1;
+        return index >= 0 && index < playlist.size() && playlist.getEntryId(index) == entryId ? index : -1;
+    }
+
+    private void playUrl(SongUrl songUrl) {
+        if (!songUrl.isPlayable() && downloads.getDownloadedFile(songUrl.id) == null) {
+            android.util.Log.e("MusicPlayerManager", "playUrl called with invalid url: " + songUrl.url);
+            return;
+        }
+        try {
+            engine.reset();
+            // A changed engine setting applies from the next track loaded
+            if (!isSelectedEngine(engine)) {
+                engine.release();
+                engine = createEngine();
+            }
+            resetRebufferStats();
+            prepareSource(engine, songUrl);
+            setState(State.PREPARING);
         } catch (Exception e) {
             e.printStackTrace();
             android.util.Log.e("MusicPlayerManager", "playUrl exception", e);
+            fail();
         }
     }
 
-    public void pause() {
-        if (mediaPlayer.isPlaying()) {
-            mediaPlayer.pause();
-            isPaused = true;
-            notifyPlaybackStateChanged(false);
+    private void prepareSource(PlaybackEngine player, SongUrl songUrl) throws java.io.IOException {
+        // Prefer the offline copy whenever there is one
+        java.io.File local = downloads.getDownloadedFile(songUrl.id);
+        if (local != null) {
+            player.prepareFile(local);
+            return;
         }
+
+        // Cached by song and the quality actually served, so the same audio is only downloaded
+        // once even though CDN urls change
+        String level = songUrl.level != null && !songUrl.level.isEmpty() ? songUrl.level : "unknown";
+        player.prepareStream(songUrl.id + "_" + level, songUrl.url);
     }
 
-    public void resume() {
-        if (isPaused && !mediaPlayer.isPlaying()) {
-            mediaPlayer.start();
-            isPaused = false;
-            notifyPlaybackStateChanged(true);
+    private void onPlayerPrepared(PlaybackEngine mp) {
+        if (mp != engine) {
+            // The upcoming track finished preparing in the background
+            if (prefetch != null && mp == prefetch.player) {
+                prefetch.prepared = true;
+                chainPrefetch();
+                // Prepared late, after the crossfade should have begun: fade over what is left
+                if (getCrossfadeMs() > 0) startCrossfade();
+            }
+            return;
         }
+
+        if (state != State.PREPARING) return;
+
+        if (resumePosition > 0) {
+            mp.seekTo(resumePosition);
+            resumePosition = 0;
+        }
+        duration = mp.getDuration();
+        if (playWhenReady) {
+            mp.start();
+            setState(State.PLAYING);
+        } else {
+            // Paused while loading
+            setState(State.PAUSED);
+        }
+        syncPosition(mp.getCurrentPosition(), playWhenReady);
+        notifyPlaybackStateChanged(playWhenReady);
+        chainPrefetch();
+        schedulePrefetch();
     }
 
-    public void togglePlayPause() {
-        if (mediaPlayer.isPlaying()) {
-            pause();
+    private void onPlayerCompletion(PlaybackEngine mp) {
+        if (mp != engine || state != State.PLAYING) return;
+
+        // The chained player has already started on its own; adopt it as the current one
+        if (prefetch != null && prefetch.chained && prefetch.index == peekNextIndex()) {
+            handOffToPrefetch().release();
+            return;
+        }
+        int nextIndex = peekNextIndex();
+        if (nextIndex >= 0) {
+            play(nextIndex, false);
         } else {
-            resume();
+            // End of the list; resume() starts the finished track over
+            setState(State.PAUSED);
+            syncPosition(duration, false);
+            notifyPlaybackStateChanged(false);
         }
     }
 
-    public void playNext() {
-        if (playlist.isEmpty()) return;
+    private void onPlayerError(PlaybackEngine mp, String error) {
+        if (mp == fadingOut) {
+            // The outgoing track failed during the fade; the new one simply continues
+            finishCrossfade();
+            return;
+        }
+        if (mp != engine) {
+            android.util.Log.w("MusicPlayerManager", "Prefetched player error: " + error);
+            if (prefetch != null && mp == prefetch.player) {
+                discardPrefetch();
+            }
+            return;
+        }
+
+        android.util.Log.e("MusicPlayerManager", "Player error: " + error);
+
+        if (retryCount < MAX_RETRY) {
+            retryCount++;
+            android.util.Log.d("MusicPlayerManager", "Retrying playback... Attempt " + retryCount);
+            // Save position
+            try {
+                resumePosition = mp.getCurrentPosition();
+            } catch (Exception e) {
+                resumePosition = 0;
+            }
+            // The cached url may have expired; only this song's entry is dropped
+            Song failing = getCurrentSong();
+            if (failing != null) {
+                neteaseApi.invalidateSongUrl(failing.id);
+            }
+            // Reload current song
+            play(currentIndex, true);
+            return;
+        }
 
-        int nextIndex = currentIndex;
+        fail();
+    }
+
+    private void resetRebufferStats() {
+        rebufferCount = 0;
+        rebufferMs = 0;
+        rebufferStartedAt = 0;
+    }
+
+    private void onPlayerBuffering(PlaybackEngine mp, boolean buffering) {
+        if (mp != engine) return;
+        long now = SystemClock.elapsedRealtime();
+        if (buffering) {
+            rebufferCount++;
+            rebufferStartedAt = now;
+            android.util.Log.d("MusicPlayerManager", "Rebuffering at " + getCurrentPosition() + "ms");
+        } else if (rebufferStartedAt > 0) {
+            rebufferMs += now - rebufferStartedAt;
+            rebufferStartedAt = 0;
+        }
+        // Freeze the published position while stalled
+        if (state == State.PLAYING) {
+            syncPosition(engine.getCurrentPosition(), !buffering);
+        }
+    }
+
+    // Index playNext() will move to, or -1 when playback stops after the current track
+    private int peekNextIndex() {
+        if (playlist.isEmpty()) return -1;
         switch (currentMode) {
             case MODE_LOOP_ONE:
-                // Keep current index, just replay
-                break;
+                return currentIndex;
             case MODE_SHUFFLE:
-                nextIndex = random.nextInt(playlist.size());
-                break;
+                return shuffleOrder.peekNext();
             case MODE_LOOP_ALL:
-                nextIndex = (currentIndex + 1) % playlist.size();
-                break;
+                return (currentIndex + 1) % playlist.size();
             case MODE_ORDER:
             default:
-                if (currentIndex < playlist.size() - 1) {
-                    nextIndex = currentIndex + 1;
-                } else {
-                    // Stop or stay at end? Typically stop or pause.
-                    // But here we might just not play.
-                    // For now, let's wrap or stop. "Order" usually implies stop at end.
-                    // If we just return, it stops.
-                    return;
-                }
-                break;
+                // "Order" stops at the end
+                return currentIndex < playlist.size() - 1 ? currentIndex + 1 : -1;
+        }
+    }
+
+    // After an edit: the prefetch is kept unless the track it holds is no longer next
+    private void onUpcomingMayHaveChanged() {
+        if (prefetch != null && prefetch.index != peekNextIndex()) discardPrefetch();
+        if (prefetch == null) schedulePrefetch(); // May have been at the end of the list
+    }
+
+    // Arrange for the upcoming track to be resolved the configured lead time before the end, and
+    // for the crossfade into it to begin
+    private void schedulePrefetch() {
+        unscheduleTransition();
+        if (state != State.PLAYING) return;
+
+        long fade = getCrossfadeMs();
+        long lead = Math.max(settingsManager.getPrefetchLeadSeconds() * 1000L, fade + CROSSFADE_PREPARE_MARGIN_MS);
+        long remaining = getDuration() - getCurrentPosition();
+        playerHandler.postDelayed(prefetchRunnable, Math.max(0, remaining - lead));
+        if (fade > 0) {
+            playerHandler.postDelayed(crossfadeRunnable, Math.max(0, remaining - fade));
+        }
+    }
+
+    private void unscheduleTransition() {
+        playerHandler.removeCallbacks(prefetchRunnable);
+        playerHandler.removeCallbacks(crossfadeRunnable);
+    }
+
+    private long getCrossfadeMs() {
+        return settingsManager.getCrossfadeSeconds() * 1000L;
+    }
+
+    // Player thread. Starts the prepared next track silently and ramps it up while the current
+    // one ramps down. When the next track is not ready in time, the usual transition at
+    // completion (chained or started then) takes over.
+    private void startCrossfade() {
+        if (state != State.PLAYING || fadingOut != null) return;
+        Prefetch next = prefetch;
+        if (next == null || !next.prepared || next.index != peekNextIndex()) return;
+
+        long fade = getCrossfadeMs();
+        long remaining = engine.getDuration() - engine.getCurrentPosition();
+        if (remaining > fade + CROSSFADE_STEP_MS * 4) {
+            // The estimate ran ahead of the real position (e.g. after buffering); come back on time
+            playerHandler.removeCallbacks(crossfadeRunnable);
+            playerHandler.postDelayed(crossfadeRunnable, remaining - fade);
+            return;
+        }
+        if (remaining < MIN_CROSSFADE_MS) return;
+
+        // Started by hand from here on, not by the end of the current one
+        if (next.chained) {
+            engine.setNext(null);
+            next.chained = false;
+        }
+        next.player.setVolume(0f);
+        next.player.start();
+        fadingOut = handOffToPrefetch();
+        fadeStartedAt = SystemClock.elapsedRealtime();
+        fadeDurationMs = Math.min(fade, remaining);
+        crossfadeTick();
+    }
+
+    private void crossfadeTick() {
+        if (fadingOut == null) return;
+        float progress = Math.min(1f, (SystemClock.elapsedRealtime() - fadeStartedAt) / (float) fadeDurationMs);
+        // Equal-power curves keep the combined loudness steady through the overlap
+        double angle = progress * Math.PI / 2;
+        fadingOut.setVolume((float) Math.cos(angle));
+        engine.setVolume((float) Math.sin(angle));
+        if (progress >= 1f) {
+            finishCrossfade();
+        } else {
+            playerHandler.postDelayed(crossfadeTickRunnable, CROSSFADE_STEP_MS);
+        }
+    }
+
+    // Ends a running crossfade at once: the outgoing track is released, the new one at full volume
+    private void finishCrossfade() {
+        if (fadingOut == null) return;
+        playerHandler.removeCallbacks(crossfadeTickRunnable);
+        fadingOut.release();
+        fadingOut = null;
+        engine.setVolume(1f);
+    }
+
+    // Between prepared and finished: completion and prefetch apply
+    private boolean hasPreparedTrack() {
+        return state == State.PLAYING || state == State.PAUSED;
+    }
+
+    private void preparePrefetch(Prefetch p, SongUrl songUrl) {
+        try {
+            p.player = createEngine();
+            prepareSource(p.player, songUrl);
+        } catch (Exception e) {
+            android.util.Log.w("MusicPlayerManager", "Prefetch prepare failed", e);
+            discardPrefetch();
+        }
+    }
+
+    private void startPrefetch() {
+        if (!hasPreparedTrack()) return;
+        int nextIndex = peekNextIndex();
+        if (nextIndex < 0) return;
+        // Loop-one replays what is already loaded, unless it has to crossfade into itself
+        if (nextIndex == currentIndex && getCrossfadeMs() == 0) return;
+        if (prefetch != null && prefetch.index == nextIndex) return;
+        discardPrefetch();
+
+        Prefetch p = new Prefetch(nextIndex, playlist.getEntryId(nextIndex), playlist.get(nextIndex));
+        prefetch = p;
+        android.util.Log.d("MusicPlayerManager", "Prefetching index " + nextIndex + ": " + p.song.name);
+
+        // A downloaded song is prepared right away and needs no url
+        boolean local = downloads.getDownloadedFile(p.song.id) != null;
+        if (local) {
+            preparePrefetch(p, new SongUrl(p.song.id, "", 0, ""));
+            if (prefetch != p) return;
+        }
+
+        p.handle = neteaseApi.getSongFullInfo(p.song.id, !local, new NeteaseApi.SongInfoCallback() {
+            @Override
+            public void onUrl(SongUrl songUrl) {
+                runOnPlayer(() -> {
+                    if (prefetch != p || !songUrl.isPlayable()) return;
+                    preparePrefetch(p, songUrl);
+                });
+            }
+
+            @Override
+            public void onDetail(Song detail) {
+                runOnPlayer(() -> {
+                    p.song = applyDetail(p.entryId, p.song, detail);
+                    if (p.handedOff && currentEntryId == p.entryId) {
+                        currentSong = p.song;
+                        notifySongChanged(p.song);
+                    }
+                });
+            }
+
+            @Override
+            public void onLyric(Lyric lyric) {
+                parseLyrics(lyric, lyrics -> {
+                    p.lyrics = lyrics;
+                    if (p.handedOff && currentEntryId == p.entryId) {
+                        publishLyrics(p.lyrics);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                android.util.Log.w("MusicPlayerManager", "Prefetch failed: " + error);
+                runOnPlayer(() -> {
+                    if (prefetch == p) discardPrefetch();
+                });
+            }
+        });
+    }
+
+    // Queue the prepared upcoming player behind the current one so it starts without a gap
+    // (engines that cannot chain start it on completion instead, see onPlayerCompletion)
+    private void chainPrefetch() {
+        if (prefetch == null || !prefetch.prepared || prefetch.chained || !hasPreparedTrack()) return;
+        prefetch.chained = engine.setNext(prefetch.player);
+    }
+
+    // Makes the prefetched (already started) track the current one. Returns the engine it replaces,
+    // which the caller releases or fades out.
+    private PlaybackEngine handOffToPrefetch() {
+        Prefetch next = prefetch;
+        prefetch = null;
+        PlaybackEngine finished = engine;
+        engine = next.player;
+        resetRebufferStats();
+
+        next.handedOff = true;
+        adoptPrefetchLoad(next);
+        setCurrent(next.index, next.entryId, next.song);
+        shuffleOrder.moveTo(currentIndex);
+        retryCount = 0;
+        resumePosition = 0;
+        playWhenReady = true;
+        setState(State.PLAYING);
+        duration = engine.getDuration();
+        syncPosition(engine.getCurrentPosition(), true);
+        applyPrefetchedInfo(next);
+        notifyPlaybackStateChanged(true);
+        schedulePrefetch();
+        return finished;
+    }
+
+    // Start the prefetched track right away if it is the one being asked for
+    private boolean startPrefetched(int index) {
+        if (prefetch == null || prefetch.index != index || !prefetch.prepared
+                || playlist.getEntryId(index) != prefetch.entryId) {
+            return false;
+        }
+
+        Prefetch next = prefetch;
+        prefetch = null;
+        unscheduleTransition();
+        playerHandler.removeCallbacks(loadRunnable);
+        supersededLoads.cancel();
+        supersededLoads = new RequestHandle();
+        setState(State.PREPARING);
+        PlaybackEngine previous = engine;
+        engine = next.player;
+        previous.setNext(null);
+        previous.release();
+        resetRebufferStats();
+
+        next.handedOff = true;
+        adoptPrefetchLoad(next);
+        setCurrent(index, next.entryId, next.song);
+        applyPrefetchedInfo(next);
+        onPlayerPrepared(engine);
+        return true;
+    }
+
+    private void applyPrefetchedInfo(Prefetch next) {
+        notifySongChanged(next.song);
+        publishLyrics(next.lyrics != null ? next.lyrics : LyricTimeline.EMPTY);
+    }
+
+    // Player thread
+    private void publishLyrics(LyricTimeline lyrics) {
+        if (lyrics == currentLyrics) return;
+        currentLyrics = lyrics;
+        notifyLyricsChanged(lyrics);
+    }
+
+    private void discardPrefetch() {
+        if (prefetch == null) return;
+        Prefetch stale = prefetch;
+        prefetch = null;
+        if (stale.handle != null) stale.handle.cancel();
+        if (stale.player != null) {
+            if (stale.chained) {
+                engine.setNext(null);
+            }
+            stale.player.release();
         }
-        play(nextIndex);
+    }
+
+    public void pause() {
+        runOnPlayer(this::pauseNow);
+    }
+
+    public void resume() {
+        runOnPlayer(this::resumeNow);
+    }
+
+    public void togglePlayPause() {
+        runOnPlayer(() -> {
+            boolean loading = state == State.RESOLVING || state == State.PREPARING;
+            if (state == State.PLAYING || (loading && playWhenReady)) {
+                pauseNow();
+            } else {
+                resumeNow();
+            }
+        });
+    }
+
+    private void pauseNow() {
+        if (state == State.PLAYING) {
+            finishCrossfade();
+            engine.pause();
+            setState(State.PAUSED);
+            syncPosition(engine.getCurrentPosition(), false);
+            unscheduleTransition();
+            notifyPlaybackStateChanged(false);
+        } else if ((state == State.RESOLVING || state == State.PREPARING) && playWhenReady) {
+            // Keep loading, but do not start once prepared
+            playWhenReady = false;
+            notifyPlaybackStateChanged(false);
+        }
+    }
+
+    private void resumeNow() {
+        if (state == State.PAUSED) {
+            // After a long pause the stream url may be close to expiry; refresh it now so a
+            // reconnect or retry does not have to wait for a new url. A downloaded file needs none.
+            Song song = getCurrentSong();
+            if (song != null && downloads.getDownloadedFile(song.id) == null) {
+                neteaseApi.refreshSongUrlIfExpiring(song.id, URL_REFRESH_AHEAD_MS);
+            }
+            engine.start();
+            playWhenReady = true;
+            setState(State.PLAYING);
+            syncPosition(engine.getCurrentPosition(), true);
+            schedulePrefetch();
+            notifyPlaybackStateChanged(true);
+        } else if (state == State.RESOLVING || state == State.PREPARING) {
+            playWhenReady = true;
+        } else if (state == State.ERROR && getCurrentSong() != null) {
+            // Try the failed track again
+            playWhenReady = true;
+            play(currentIndex, false);
+        }
+    }
+
+    public void playNext() {
+        runOnPlayer(() -> {
+            int nextIndex = peekNextIndex();
+            if (nextIndex < 0) return;
+            play(nextIndex, false);
+        });
     }
 
     public void playPrevious() {
+        runOnPlayer(this::playPreviousNow);
+    }
+
+    private void playPreviousNow() {
         if (playlist.isEmpty()) return;
 
         int prevIndex = currentIndex;
@@ -371,7 +1096,12 @@ public class MusicPlayerManager {
             case MODE_LOOP_ONE:
                 break;
             case MODE_SHUFFLE:
-                prevIndex = random.nextInt(playlist.size());
+                // At the start of a round there is nothing before; restart the current track
+                int previous = shuffleOrder.peekPrevious();
+                if (previous >= 0) {
+                    shuffleOrder.previous();
+                    prevIndex = previous;
+                }
                 break;
             case MODE_LOOP_ALL:
                 prevIndex = (currentIndex - 1 + playlist.size()) % playlist.size();
@@ -385,51 +1115,76 @@ public class MusicPlayerManager {
                 }
                 break;
         }
-        play(prevIndex);
+        play(prevIndex, false);
     }
 
 
     public void seekTo(int msec) {
-        try {
-            mediaPlayer.seekTo(msec);
-        } catch (Exception e) {
-            e.printStackTrace();
+        runOnPlayer(() -> {
+            if (!hasPreparedTrack()) {
+                // Applied once the loading track is prepared
+                if (state == State.RESOLVING || state == State.PREPARING) resumePosition = msec;
+                return;
+            }
+            try {
+                finishCrossfade();
+                engine.seekTo(msec);
+                syncPosition(msec, state == State.PLAYING);
+                schedulePrefetch();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    // Estimated from the last position the player thread published; never blocks on the player
+    public synchronized int getCurrentPosition() {
+        long position = positionBase;
+        if (positionRunning) {
+            position += SystemClock.elapsedRealtime() - positionClock;
         }
+        int total = duration;
+        if (total > 0 && position > total) position = total;
+        return (int) position;
     }
 
-    public int getCurrentPosition() {
+    private synchronized void syncPosition(int position, boolean running) {
+        positionBase = position;
+        positionClock = SystemClock.elapsedRealtime();
+        positionRunning = running;
+    }
+
+    // Player thread. Corrects drift between the estimate and the real position, e.g. after buffering
+    private void syncPositionTick() {
+        if (state != State.PLAYING) return;
         try {
-            return mediaPlayer.getCurrentPosition();
-        } catch (Exception e) {
-            return 0;
+            syncPosition(engine.getCurrentPosition(), engine.isPlaying());
+        } catch (Exception ignored) {
         }
+        playerHandler.postDelayed(positionSyncRunnable, POSITION_SYNC_MS);
     }
 
     public int getDuration() {
-        try {
-            return mediaPlayer.getDuration();
-        } catch (Exception e) {
-            return 0;
-        }
+        return duration;
     }
 
     public boolean isPlaying() {
-        try {
-            return mediaPlayer.isPlaying();
-        } catch (Exception e) {
-            return false;
-        }
+        return state == State.PLAYING;
     }
 
     public Song getCurrentSong() {
-        if (currentIndex >= 0 && currentIndex < playlist.size()) {
-            return playlist.get(currentIndex);
-        }
-        return null;
+        return currentSong;
+    }
+
+    public LyricTimeline getCurrentLyrics() {
+        return currentLyrics;
     }
 
-    public String getCurrentLyric() {
-        return currentLyric;
+    // Engine in use and how often the current track stalled waiting for data
+    public String dumpStats() {
+        PlaybackEngine current = engine;
+        return "engine=" + (current != null ? current.getClass().getSimpleName() : "none")
+                + " state=" + state + " rebuffers=" + rebufferCount + " rebufferMs=" + rebufferMs;
     }
 
     public void addOnSongChangedListener(OnSongChangedListener listener) {
@@ -448,10 +1203,12 @@ public class MusicPlayerManager {
         playlistChangedListeners.remove(listener);
     }
 
-    private void notifyPlaylistChanged() {
+    // Listeners get the queue as of this edit, so each change applies to the state it was made on
+    private void notifyPlaylistChanged(PlayQueue.Change change) {
+        PlayQueue snapshot = playlist;
         new Handler(Looper.getMainLooper()).post(() -> {
             for (OnPlaylistChangedListener listener : playlistChangedListeners) {
-                listener.onPlaylistChanged(playlist);
+                listener.onPlaylistChanged(snapshot, change);
             }
         });
     }
@@ -472,6 +1229,22 @@ public class MusicPlayerManager {
         playbackStateChangedListeners.remove(listener);
     }
 
+    private void notifyLyricsChanged(LyricTimeline lyrics) {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            for (OnLyricsChangedListener listener : lyricsChangedListeners) {
+                listener.onLyricsChanged(lyrics);
+            }
+        });
+    }
+
+    public void addOnLyricsChangedListener(OnLyricsChangedListener listener) {
+        lyricsChangedListeners.add(listener);
+    }
+
+    public void removeOnLyricsChangedListener(OnLyricsChangedListener listener) {
+        lyricsChangedListeners.remove(listener);
+    }
+
     public void addOnPlaybackModeChangedListener(OnPlaybackModeChangedListener listener) {
         playbackModeChangedListeners.add(listener);
     }
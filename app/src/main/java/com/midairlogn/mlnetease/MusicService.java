@@ -21,10 +21,6 @@ import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.media.session.MediaButtonReceiver;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
 public class MusicService extends Service {
     private static final String TAG = "MusicService";
     private static final String CHANNEL_ID = "music_channel";
@@ -47,12 +43,17 @@ public class MusicService extends Service {
         public void onSongChanged(Song song) {
             updateMetadata(song);
             if (floatingLyricsManager != null) {
-                floatingLyricsManager.updateLyrics(musicPlayerManager.getCurrentLyric());
                 floatingLyricsManager.updateSongInfo(song);
             }
         }
     };
 
+    private final MusicPlayerManager.OnLyricsChangedListener lyricsChangedListener = lyrics -> {
+        if (floatingLyricsManager != null) {
+            floatingLyricsManager.updateLyrics(lyrics);
+        }
+    };
+
     private final MusicPlayerManager.OnPlaybackStateChangedListener playbackStateChangedListener = this::updatePlaybackState;
 
     private final MusicPlayerManager.OnPlaybackModeChangedListener playbackModeChangedListener = mode -> {
@@ -79,6 +80,7 @@ public class MusicService extends Service {
 
         // Listen to player changes
         musicPlayerManager.addOnSongChangedListener(songChangedListener);
+        musicPlayerManager.addOnLyricsChangedListener(lyricsChangedListener);
         musicPlayerManager.addOnPlaybackStateChangedListener(playbackStateChangedListener);
         musicPlayerManager.addOnPlaybackModeChangedListener(playbackModeChangedListener);
 
@@ -169,16 +171,11 @@ public class MusicService extends Service {
         showNotification(song, musicPlayerManager.isPlaying(), currentArt);
 
         // Fetch album art async
-        new Thread(() -> {
+        AppExecutors.image().execute(() -> {
             Bitmap albumArt = null;
             if (song.picUrl != null && !song.picUrl.isEmpty()) {
                 try {
-                    URL url = new URL(song.picUrl);
-                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                    connection.setDoInput(true);
-                    connection.connect();
-                    InputStream input = connection.getInputStream();
-                    albumArt = BitmapFactory.decodeStream(input);
+                    albumArt = CoverLoader.load(song.picUrl);
                 } catch (Exception e) {
                     Log.e(TAG, "Error fetching album art", e);
                     // Fallback to app icon or null
@@ -205,7 +202,7 @@ public class MusicService extends Service {
 
             mediaSession.setMetadata(builder.build());
             showNotification(song, musicPlayerManager.isPlaying(), finalAlbumArt);
-        }).start();
+        });
     }
 
     private void updatePlaybackState(boolean isPlaying) {
@@ -371,6 +368,7 @@ public class MusicService extends Service {
             app.removeAppVisibilityListener(appVisibilityListener);
         }
         musicPlayerManager.removeOnSongChangedListener(songChangedListener);
+        musicPlayerManager.removeOnLyricsChangedListener(lyricsChangedListener);
         musicPlayerManager.removeOnPlaybackStateChangedListener(playbackStateChangedListener);
         musicPlayerManager.removeOnPlaybackModeChangedListener(playbackModeChangedListener);
         if (floatingLyricsManager != null) {
@@ -1,5 +1,6 @@
 package com.midairlogn.mlnetease;
 
+import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 import okhttp3.*;
@@ -7,9 +8,15 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class NeteaseApi {
 
@@ -23,19 +30,66 @@ public class NeteaseApi {
                     return new ArrayList<>();
                 }
             })
+            .dispatcher(createDispatcher())
             .connectTimeout(10, TimeUnit.SECONDS)
             .readTimeout(10, TimeUnit.SECONDS)
             .build();
 
+    private static Dispatcher createDispatcher() {
+        // Run enqueued calls on the shared network pool instead of OkHttp's unbounded default
+        AppExecutors.Pool pool = AppExecutors.network();
+        Dispatcher dispatcher = new Dispatcher(pool.getExecutorService());
+        dispatcher.setMaxRequests(pool.getMaxPoolSize());
+        return dispatcher;
+    }
+
+    // Shared by every NeteaseApi instance so the player and the UI see the same resolved urls
+    private static final SongUrlCache urlCache = new SongUrlCache();
+    // Identical requests in flight at the same time (player, service, prefetch) share one call
+    private static final SingleFlight<Object> inFlight = new SingleFlight<>("api");
+    private static final AtomicLong cacheHitCount = new AtomicLong();
+
+    private static final int SONG_DETAIL_BATCH_SIZE = 100;
+    private static final int MAX_PARALLEL_BATCHES = 4;
+
+    // Reported when a request's work is turned away by a full executor queue
+    private static final String BUSY_ERROR = "Too many requests, try again";
+
     private SettingsManager settingsManager;
+    private SongMetadataStore metadataStore;
+    private LyricStore lyricStore;
     private Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    public NeteaseApi(SettingsManager settingsManager) {
-        this.settingsManager = settingsManager;
+    public NeteaseApi(Context context) {
+        this.settingsManager = new SettingsManager(context);
+        this.metadataStore = SongMetadataStore.getInstance(context);
+        this.lyricStore = LyricStore.getInstance(context);
+    }
+
+    public interface ResultCallback<T> {
+        void onSuccess(T result);
+        void onError(String error);
+    }
+
+    /**
+     * Progressive result of {@link #getSongFullInfo}. onUrl arrives first in the common case and
+     * is the only playback-critical event; onDetail and onLyric follow independently. onError is
+     * only raised when the url could not be resolved.
+     */
+    public interface SongInfoCallback {
+        void onUrl(SongUrl url);
+        void onDetail(Song detail);
+        void onLyric(Lyric lyric);
+        void onError(String error);
     }
 
-    public interface ApiCallback {
-        void onSuccess(String result);
+    /**
+     * Streaming result of {@link #playlistDetail}. onSongs is called once per loaded batch, always
+     * in playlist order, with the running count of loaded songs and the playlist's track count.
+     */
+    public interface PlaylistCallback {
+        void onSongs(List<Song> songs, int loaded, int total);
+        void onComplete(int loaded);
         void onError(String error);
     }
 
@@ -68,7 +122,7 @@ public class NeteaseApi {
         return builder;
     }
 
-    public void search(String keyword, ApiCallback callback) {
+    public RequestHandle search(String keyword, ResultCallback<SearchPage> callback) {
         String limit = String.valueOf(settingsManager.getSearchLimit());
         FormBody body = new FormBody.Builder()
                 .add("s", keyword)
@@ -80,71 +134,184 @@ public class NeteaseApi {
                 .post(body)
                 .build();
 
-        execute(request, callback);
+        RequestHandle handle = new RequestHandle();
+        execute("cloudsearch|" + keyword + "|" + limit, request, in -> {
+            SearchPage page = SongJsonReader.readSearch(in, keyword);
+            metadataStore.putAllAsync(page.songs);
+            return page;
+        }, callback, handle);
+        return handle;
     }
 
-    public void songDetail(String ids, ApiCallback callback) {
-        try {
-            JSONArray jsonIds = new JSONArray();
-            String[] idArray = ids.split(",");
-            for (String id : idArray) {
-                JSONObject obj = new JSONObject();
-                String trimmedId = id.trim();
-                try {
-                    obj.put("id", Long.parseLong(trimmedId));
-                } catch (NumberFormatException e) {
-                    obj.put("id", trimmedId);
+    // Served from the metadata store where possible; only unknown or stale ids go to the network
+    public RequestHandle songDetail(String ids, ResultCallback<List<Song>> callback) {
+        RequestHandle handle = new RequestHandle();
+        Future<?> task = AppExecutors.api().submit(() -> {
+            if (handle.isCancelled()) return;
+            try {
+                List<String> idList = new ArrayList<>();
+                for (String id : ids.split(",")) {
+                    idList.add(id.trim());
                 }
-                obj.put("v", 0);
-                jsonIds.put(obj);
-            }
 
-            FormBody body = new FormBody.Builder()
-                    .add("c", jsonIds.toString())
-                    .build();
+                Map<String, Song> known = metadataStore.getFresh(idList);
+                List<String> missing = new ArrayList<>();
+                for (String id : idList) {
+                    if (!known.containsKey(id)) missing.add(id);
+                }
 
-            // Use BrowserBuilder as per Python playlist_detail logic (although standalone songDetail might vary,
-            // but in playlist context it uses browser headers)
-            Request request = getBrowserBuilder("https://interface3.music.163.com/api/v3/song/detail")
-                    .post(body)
-                    .build();
+                if (missing.isEmpty()) {
+                    cacheHitCount.incrementAndGet();
+                    List<Song> result = pick(idList, known);
+                    post(handle, () -> callback.onSuccess(result));
+                    return;
+                }
 
-            execute(request, callback);
-        } catch (Exception e) {
-            callback.onError(e.getMessage());
-        }
+                Request request = buildSongDetailRequest(missing.toArray(new String[0]));
+                execute("song/detail|" + android.text.TextUtils.join(",", missing), request, body -> {
+                    List<Song> fetched = SongJsonReader.readSongDetail(body);
+                    metadataStore.putAllAsync(fetched);
+                    return fetched;
+                }, new ResultCallback<List<Song>>() {
+                    @Override
+                    public void onSuccess(List<Song> fetched) {
+                        Map<String, Song> merged = new HashMap<>(known);
+                        for (Song song : fetched) {
+                            merged.put(song.id, song);
+                        }
+                        callback.onSuccess(pick(idList, merged));
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        callback.onError(error);
+                    }
+                }, handle);
+            } catch (Exception e) {
+                post(handle, () -> callback.onError(e.getMessage()));
+            }
+        }, () -> post(handle, () -> callback.onError(BUSY_ERROR)));
+        handle.onCancel(() -> task.cancel(true));
+        return handle;
     }
 
-    public void songUrl(String id, ApiCallback callback) {
+    // Answered from the url cache while the cached url is still comfortably within its lifetime
+    public RequestHandle songUrl(String id, ResultCallback<SongUrl> callback) {
+        RequestHandle handle = new RequestHandle();
         String level = settingsManager.getQuality();
+        SongUrl cached = urlCache.get(id, level);
+        if (cached != null) {
+            cacheHitCount.incrementAndGet();
+            post(handle, () -> callback.onSuccess(cached));
+            return handle;
+        }
         try {
-            String requestId = String.valueOf((long)(20000000 + Math.random() * 10000000));
-            String headerJson = CryptoUtils.toHeaderJsonStr(requestId);
-            String payloadJson = CryptoUtils.toPayloadJsonStr(id, level, headerJson);
+            execute("song/url|" + id + "|" + level, buildSongUrlRequest(id, level), body -> {
+                SongUrl songUrl = SongJsonReader.readSongUrl(body, id);
+                android.util.Log.d("NeteaseApi", "songUrl resolved: " + songUrl.url);
+                urlCache.put(id, level, songUrl);
+                return songUrl;
+            }, callback, handle);
+        } catch (Exception e) {
+            post(handle, () -> callback.onError(e.getMessage()));
+        }
+        return handle;
+    }
 
-            // Debug: log payload
-            android.util.Log.d("NeteaseApi", "songUrl raw payload: " + payloadJson);
+    // Drop the cached url for this song at the current quality, e.g. after the player failed on it
+    public void invalidateSongUrl(String id) {
+        urlCache.invalidate(id, settingsManager.getQuality());
+    }
 
-            String url = "https://interface3.music.163.com/eapi/song/enhance/player/url/v1";
-            String params = CryptoUtils.eapiEncrypt(url, payloadJson);
+    // Re-resolve the url in the background if the cached one would expire within withinMs
+    public void refreshSongUrlIfExpiring(String id, long withinMs) {
+        String level = settingsManager.getQuality();
+        if (!urlCache.isExpiring(id, level, withinMs)) return;
 
-            FormBody body = new FormBody.Builder()
-                    .add("params", params)
-                    .build();
+        urlCache.invalidate(id, level);
+        songUrl(id, new ResultCallback<SongUrl>() {
+            @Override
+            public void onSuccess(SongUrl result) {}
 
-            Request request = getDesktopBuilder(url)
-                    .post(body)
-                    .header("Referer", "") // Match Python post() helper
-                    .build();
+            @Override
+            public void onError(String error) {
+                android.util.Log.w("NeteaseApi", "songUrl refresh failed: " + error);
+            }
+        });
+    }
 
-            execute(request, callback);
+    public RequestHandle lyric(String id, ResultCallback<Lyric> callback) {
+        RequestHandle handle = new RequestHandle();
+        Future<?> task = AppExecutors.diskIO().submit(() -> {
+            if (handle.isCancelled()) return;
+            Lyric cached = lyricStore.get(id);
+            // Empty entries archived by older versions are fetched again
+            if (cached != null && !cached.isEmpty()) {
+                cacheHitCount.incrementAndGet();
+                post(handle, () -> callback.onSuccess(cached));
+                return;
+            }
+            execute("song/lyric|" + id, buildLyricRequest(id), body -> {
+                Lyric lyric = SongJsonReader.readLyric(body);
+                // An empty reply (no lyrics yet, or none at all) is not archived, so lyrics added
+                // later are still found
+                if (!lyric.isEmpty()) {
+                    lyricStore.putAsync(id, lyric);
+                }
+                return lyric;
+            }, callback, handle);
+        }, () -> post(handle, () -> callback.onError(BUSY_ERROR)));
+        handle.onCancel(() -> task.cancel(true));
+        return handle;
+    }
 
-        } catch (Exception e) {
-            callback.onError(e.getMessage());
+    private Request buildSongDetailRequest(String[] ids) throws Exception {
+        JSONArray jsonIds = new JSONArray();
+        for (String id : ids) {
+            JSONObject obj = new JSONObject();
+            long numericId = Song.parseId(id);
+            if (numericId >= 0) {
+                obj.put("id", numericId);
+            } else {
+                obj.put("id", id.trim());
+            }
+            obj.put("v", 0);
+            jsonIds.put(obj);
         }
+
+        FormBody body = new FormBody.Builder()
+                .add("c", jsonIds.toString())
+                .build();
+
+        // Use BrowserBuilder as per Python playlist_detail logic (although standalone songDetail might vary,
+        // but in playlist context it uses browser headers)
+        return getBrowserBuilder("https://interface3.music.163.com/api/v3/song/detail")
+                .post(body)
+                .build();
+    }
+
+    private Request buildSongUrlRequest(String id, String level) {
+        String requestId = String.valueOf((long)(20000000 + Math.random() * 10000000));
+        String headerJson = CryptoUtils.toHeaderJsonStr(requestId);
+        String payloadJson = CryptoUtils.toPayloadJsonStr(id, level, headerJson);
+
+        // Debug: log payload
+        android.util.Log.d("NeteaseApi", "songUrl raw payload: " + payloadJson);
+
+        String url = "https://interface3.music.163.com/eapi/song/enhance/player/url/v1";
+        String params = CryptoUtils.eapiEncrypt(url, payloadJson);
+
+        FormBody body = new FormBody.Builder()
+                .add("params", params)
+                .build();
+
+        return getDesktopBuilder(url)
+                .post(body)
+                .header("Referer", "") // Match Python post() helper
+                .build();
     }
 
-    public void lyric(String id, ApiCallback callback) {
+    private Request buildLyricRequest(String id) {
         FormBody body = new FormBody.Builder()
                 .add("id", id)
                 .add("cp", "false")
@@ -152,317 +319,347 @@ public class NeteaseApi {
                 .add("lv", "0")
                 .add("rv", "0")
                 .add("kv", "0")
-                .add("yv", "0")
+                .add("yv", "1")
                 .add("ytv", "0")
                 .add("yrv", "0")
                 .build();
 
         // Python lyric_v1 uses raw requests.post (no Desktop headers).
         // Using BrowserBuilder (Mozilla) but removing Referer to be closer to "no referer".
-        Request request = getBrowserBuilder("https://interface3.music.163.com/api/song/lyric")
+        return getBrowserBuilder("https://interface3.music.163.com/api/song/lyric")
                 .post(body)
                 .removeHeader("Referer")
                 .build();
+    }
 
-        execute(request, callback);
+    public RequestHandle albumDetail(String id, ResultCallback<AlbumResult> callback) {
+        Request request = getBrowserBuilder("https://music.163.com/api/v1/album/" + id)
+                .get()
+                .build();
+        RequestHandle handle = new RequestHandle();
+        execute("album|" + id, request, body -> {
+            AlbumResult album = SongJsonReader.readAlbum(body);
+            if (album == null) {
+                throw new IOException("Album not found");
+            }
+            metadataStore.putAllAsync(album.songs);
+            return album;
+        }, callback, handle);
+        return handle;
     }
 
-    public void albumDetail(String id, ApiCallback callback) {
-        new Thread(() -> {
+    public RequestHandle playlistDetail(String id, PlaylistCallback callback) {
+        RequestHandle handle = new RequestHandle();
+        Future<?> task = AppExecutors.api().submit(() -> {
+            if (handle.isCancelled()) return;
             try {
-                Request request = getBrowserBuilder("https://music.163.com/api/v1/album/" + id)
-                        .get()
+                // 1. Get Playlist Info
+                Request req1 = getBrowserBuilder("https://music.163.com/api/v6/playlist/detail")
+                        .post(new FormBody.Builder().add("id", id).build())
                         .build();
-                Response response = client.newCall(request).execute();
-                String body = response.body().string();
-                JSONObject json = new JSONObject(body);
 
-                JSONObject album = json.optJSONObject("album");
-                if (album == null) {
-                    postError(callback, "Album not found");
-                    return;
+                SongJsonReader.PlaylistData playlist;
+                Call call1 = client.newCall(req1);
+                handle.onCancel(call1::cancel);
+                try (Response res1 = call1.execute()) {
+                    playlist = SongJsonReader.readPlaylist(res1.body().charStream());
+                    if (playlist == null) {
+                        postError(handle, callback, "Playlist not found or error: HTTP " + res1.code());
+                        return;
+                    }
                 }
 
-                JSONObject info = new JSONObject();
-                info.put("id", album.opt("id"));
-                info.put("name", album.optString("name"));
-                info.put("coverImgUrl", CryptoUtils.getPicUrl(String.valueOf(album.opt("pic")), 300));
-                info.put("artist", album.optJSONObject("artist") != null ? album.optJSONObject("artist").optString("name") : "");
-                info.put("publishTime", album.optLong("publishTime"));
-                info.put("description", album.optString("description"));
-
-                JSONArray songsJson = new JSONArray();
-                JSONArray songs = json.optJSONArray("songs");
-                if (songs != null) {
-                    for (int i = 0; i < songs.length(); i++) {
-                        JSONObject song = songs.getJSONObject(i);
-                        JSONObject songInfo = new JSONObject();
-                        songInfo.put("id", song.opt("id"));
-                        songInfo.put("name", song.optString("name"));
-
-                        JSONArray ar = song.optJSONArray("ar");
-                        StringBuilder artists = new StringBuilder();
-                        if (ar != null) {
-                            for (int k = 0; k < ar.length(); k++) {
-                                if (k > 0) artists.append("/");
-                                artists.append(ar.getJSONObject(k).optString("name"));
-                            }
-                        }
-                        songInfo.put("artists", artists.toString());
+                List<String> allIds = playlist.trackIds;
+                if (allIds.isEmpty()) {
+                    post(handle, () -> callback.onComplete(0));
+                    return;
+                }
 
-                        JSONObject al = song.optJSONObject("al");
-                        songInfo.put("album", al != null ? al.optString("name") : "");
-                        songInfo.put("picUrl", al != null ? CryptoUtils.getPicUrl(String.valueOf(al.opt("pic")), 300) : "");
+                // v6 already embeds full details for the leading tracks; only fetch the rest
+                Map<String, Song> known = new HashMap<>();
+                for (Song song : playlist.tracks) {
+                    known.put(song.id, song);
+                }
+                metadataStore.putAllAsync(playlist.tracks);
 
-                        songsJson.put(songInfo);
-                    }
+                // Songs seen recently (search, albums, other playlists) need no request either
+                List<String> notEmbedded = new ArrayList<>();
+                for (String tid : allIds) {
+                    if (!known.containsKey(tid)) notEmbedded.add(tid);
                 }
-                info.put("songs", songsJson);
+                known.putAll(metadataStore.getFresh(notEmbedded));
 
-                JSONObject result = new JSONObject();
-                result.put("album", info);
-                result.put("status", 200);
+                // 2. Batch fetch details, several batches in flight, delivered in playlist order
+                new PlaylistBatchLoader(allIds, known, callback, handle).start();
 
-                postSuccess(callback, result.toString());
             } catch (Exception e) {
-                postError(callback, e.getMessage());
+                postError(handle, callback, e.getMessage());
             }
-        }).start();
+        }, () -> postError(handle, callback, BUSY_ERROR));
+        handle.onCancel(() -> task.cancel(true));
+        return handle;
     }
 
-    public void playlistDetail(String id, ApiCallback callback) {
-        new Thread(() -> {
-            try {
-                // 1. Get Playlist Info
-                Request req1 = getBrowserBuilder("https://music.163.com/api/v6/playlist/detail")
-                        .post(new FormBody.Builder().add("id", id).build())
-                        .build();
-
-                Response res1 = client.newCall(req1).execute();
-                String body1 = res1.body().string();
-                JSONObject json1 = new JSONObject(body1);
+    /**
+     * Fetches v3/song/detail for a playlist in SONG_DETAIL_BATCH_SIZE chunks with at most
+     * MAX_PARALLEL_BATCHES requests in flight. Ids whose details are already known (embedded in
+     * the playlist response or fresh in the metadata store) are not requested again. Batches may complete out of order; they are
+     * buffered and handed to the callback strictly in playlist order. Cancelling the handle
+     * cancels every batch still in flight and stops further batches from being issued.
+     */
+    private class PlaylistBatchLoader {
+        private final List<String> allIds;
+        private final Map<String, Song> known;
+        private final PlaylistCallback callback;
+        private final RequestHandle handle;
+        private final List<Song>[] results;
+        private int nextBatchToFetch = 0;
+        private int nextBatchToDeliver = 0;
+        private int deliveredCount = 0;
+        private int failedBatches = 0;
+
+        @SuppressWarnings("unchecked")
+        PlaylistBatchLoader(List<String> allIds, Map<String, Song> known, PlaylistCallback callback,
+                            RequestHandle handle) {
+            this.allIds = allIds;
+            this.known = known;
+            this.callback = callback;
+            this.handle = handle;
+            int batchCount = (allIds.size() + SONG_DETAIL_BATCH_SIZE - 1) / SONG_DETAIL_BATCH_SIZE;
+            this.results = new List[batchCount];
+        }
 
-                if (!json1.has("playlist")) {
-                    postError(callback, "Playlist not found or error: " + body1);
-                    return;
-                }
+        synchronized void start() {
+            while (nextBatchToFetch < results.length && nextBatchToFetch < MAX_PARALLEL_BATCHES) {
+                fetch(nextBatchToFetch++);
+            }
+        }
 
-                JSONObject playlist = json1.getJSONObject("playlist");
-                JSONArray trackIds = playlist.getJSONArray("trackIds");
+        private void fetch(int batchIndex) {
+            if (handle.isCancelled()) return;
+            int from = batchIndex * SONG_DETAIL_BATCH_SIZE;
+            int to = Math.min(from + SONG_DETAIL_BATCH_SIZE, allIds.size());
+            List<String> batch = allIds.subList(from, to);
 
-                List<String> allIds = new ArrayList<>();
-                for (int i = 0; i < trackIds.length(); i++) {
-                    allIds.add(String.valueOf(trackIds.getJSONObject(i).get("id")));
-                }
+            List<String> missing = new ArrayList<>();
+            for (String tid : batch) {
+                if (!known.containsKey(tid)) missing.add(tid);
+            }
+            if (missing.isEmpty()) {
+                onBatchDone(batchIndex, pick(batch, known));
+                return;
+            }
 
-                // 2. Batch fetch details
-                JSONArray allSongs = new JSONArray();
+            Request songReq;
+            try {
+                songReq = buildSongDetailRequest(missing.toArray(new String[0]));
+            } catch (Exception e) {
+                onBatchDone(batchIndex, null);
+                return;
+            }
 
-                for (int i = 0; i < allIds.size(); i += 100) {
-                    int end = Math.min(i + 100, allIds.size());
-                    List<String> batch = allIds.subList(i, end);
+            Call batchCall = client.newCall(songReq);
+            handle.onCancel(batchCall::cancel);
+            batchCall.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    android.util.Log.w("NeteaseApi", "playlist batch " + batchIndex + " failed: " + e.getMessage());
+                    onBatchDone(batchIndex, null);
+                }
 
-                    JSONArray c = new JSONArray();
-                    for (String tid : batch) {
-                        JSONObject item = new JSONObject();
-                        try {
-                            item.put("id", Long.parseLong(tid)); // Use number to match Python logic
-                        } catch (NumberFormatException e) {
-                            item.put("id", tid);
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    List<Song> songs = null;
+                    try (ResponseBody body = response.body()) {
+                        List<Song> detail = SongJsonReader.readSongDetail(body.charStream());
+                        metadataStore.putAllAsync(detail);
+                        Map<String, Song> fetched = new HashMap<>();
+                        for (Song song : detail) {
+                            fetched.put(song.id, song);
                         }
-                        item.put("v", 0);
-                        c.put(item);
-                    }
-
-                    FormBody songBody = new FormBody.Builder()
-                            .add("c", c.toString())
-                            .build();
-
-                    Request songReq = getBrowserBuilder("https://interface3.music.163.com/api/v3/song/detail")
-                            .post(songBody)
-                            .build();
-
-                    Response songRes = client.newCall(songReq).execute();
-                    JSONObject songJson = new JSONObject(songRes.body().string());
-
-                    if (songJson.has("songs")) {
-                        JSONArray songs = songJson.getJSONArray("songs");
-                        for (int k = 0; k < songs.length(); k++) {
-                            // Construct song info similar to Python search_music/playlist_detail
-                            JSONObject song = songs.getJSONObject(k);
-                            JSONObject songInfo = new JSONObject();
-                            songInfo.put("id", song.opt("id"));
-                            songInfo.put("name", song.optString("name"));
-
-                            JSONArray ar = song.optJSONArray("ar");
-                            StringBuilder artists = new StringBuilder();
-                            if (ar != null) {
-                                for (int m = 0; m < ar.length(); m++) {
-                                    if (m > 0) artists.append("/");
-                                    artists.append(ar.getJSONObject(m).optString("name"));
-                                }
-                            }
-                            songInfo.put("artists", artists.toString());
-
-                            JSONObject al = song.optJSONObject("al");
-                            songInfo.put("album", al != null ? al.optString("name") : "");
-                            songInfo.put("picUrl", al != null ? al.optString("picUrl") : "");
-
-                            allSongs.put(songInfo);
+                        for (String tid : batch) {
+                            Song song = known.get(tid);
+                            if (song != null) fetched.put(tid, song);
                         }
+                        songs = pick(batch, fetched);
+                    } catch (Exception e) {
+                        android.util.Log.w("NeteaseApi", "playlist batch " + batchIndex + " parse failed: " + e.getMessage());
                     }
+                    onBatchDone(batchIndex, songs);
                 }
+            });
+        }
 
-                JSONObject result = new JSONObject();
-                result.put("playlist", playlist); // Keep original playlist info
-                result.put("songs", allSongs); // Add processed songs
-                result.put("status", 200);
-
-                postSuccess(callback, result.toString());
+        private synchronized void onBatchDone(int batchIndex, List<Song> songs) {
+            if (handle.isCancelled()) return;
+            if (songs == null) {
+                failedBatches++;
+                songs = new ArrayList<>();
+            }
+            results[batchIndex] = songs;
+
+            // Flush every batch that is now contiguous with what was already delivered
+            while (nextBatchToDeliver < results.length && results[nextBatchToDeliver] != null) {
+                List<Song> ready = results[nextBatchToDeliver];
+                results[nextBatchToDeliver] = Collections.emptyList(); // Release for GC
+                nextBatchToDeliver++;
+                if (!ready.isEmpty()) {
+                    deliveredCount += ready.size();
+                    int loaded = deliveredCount;
+                    post(handle, () -> callback.onSongs(ready, loaded, allIds.size()));
+                }
+            }
 
-            } catch (Exception e) {
-                postError(callback, e.getMessage());
+            if (nextBatchToFetch < results.length) {
+                fetch(nextBatchToFetch++);
+            } else if (nextBatchToDeliver == results.length) {
+                if (failedBatches == results.length) {
+                    postError(handle, callback, "Failed to load playlist songs");
+                } else {
+                    int total = deliveredCount;
+                    post(handle, () -> callback.onComplete(total));
+                }
             }
-        }).start();
+        }
     }
 
-    public void getSongFullInfo(String id, ApiCallback callback) {
-        new Thread(() -> {
-            try {
-                // 1. Get Song URL
-                String level = settingsManager.getQuality();
-
-                String requestId = String.valueOf((long)(20000000 + Math.random() * 10000000));
-                String headerJson = CryptoUtils.toHeaderJsonStr(requestId);
-                String payloadJson = CryptoUtils.toPayloadJsonStr(id, level, headerJson);
-
-                String url = "https://interface3.music.163.com/eapi/song/enhance/player/url/v1";
-                String params = CryptoUtils.eapiEncrypt(url, payloadJson);
-
-                android.util.Log.d("NeteaseApi", "songUrl payload: " + payloadJson);
-
-                FormBody bodyUrl = new FormBody.Builder().add("params", params).build();
-                // Override Referer for songUrl as per Python 'post' function (Referer='')
-                Request reqUrl = getDesktopBuilder(url).post(bodyUrl).header("Referer", "").build();
-                Response resUrl = client.newCall(reqUrl).execute();
-                String resUrlStr = resUrl.body().string();
-                android.util.Log.d("NeteaseApi", "songUrl response: " + resUrlStr);
-
-                JSONObject jsonUrl = new JSONObject(resUrlStr);
-
-                // 2. Get Song Detail (Name, Pic, etc)
-                JSONArray jsonIds = new JSONArray();
-                JSONObject objId = new JSONObject();
-                try {
-                    objId.put("id", Long.parseLong(id));
-                } catch (NumberFormatException e) {
-                    objId.put("id", id);
-                }
-                objId.put("v", 0);
-                jsonIds.put(objId);
-                FormBody bodyDetail = new FormBody.Builder().add("c", jsonIds.toString()).build();
-                // Use BrowserBuilder for song/detail here to match playlistDetail logic?
-                // Wait, Python uses `name_v1` which uses basic `requests.post`.
-                // But let's stick to BrowserBuilder for consistency with playlistDetail
-                Request reqDetail = getBrowserBuilder("https://interface3.music.163.com/api/v3/song/detail").post(bodyDetail).build();
-                Response resDetail = client.newCall(reqDetail).execute();
-                JSONObject jsonDetail = new JSONObject(resDetail.body().string());
-
-                // 3. Get Lyrics
-                FormBody bodyLyric = new FormBody.Builder()
-                        .add("id", id)
-                        .add("cp", "false")
-                        .add("tv", "0")
-                        .add("lv", "0")
-                        .add("rv", "0")
-                        .add("kv", "0")
-                        .add("yv", "0")
-                        .add("ytv", "0")
-                        .add("yrv", "0")
-                        .build();
-                Request reqLyric = getBrowserBuilder("https://interface3.music.163.com/api/song/lyric")
-                        .post(bodyLyric)
-                        .removeHeader("Referer")
-                        .build();
-                Response resLyric = client.newCall(reqLyric).execute();
-                JSONObject jsonLyric = new JSONObject(resLyric.body().string());
-
-                // Combine results
-                JSONObject result = new JSONObject();
-
-                // Process URL
-                if (jsonUrl.has("data") && jsonUrl.getJSONArray("data").length() > 0) {
-                    JSONObject dataObj = jsonUrl.getJSONArray("data").getJSONObject(0);
-                    result.put("url", dataObj.optString("url", ""));
-                    result.put("size", dataObj.optLong("size", 0));
-                    result.put("level", dataObj.optString("level", ""));
-                }
+    // song/detail does not guarantee response order; restore the requested order
+    private static List<Song> pick(List<String> ids, Map<String, Song> byId) {
+        List<Song> ordered = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Song song = byId.get(id);
+            if (song != null) ordered.add(song);
+        }
+        return ordered;
+    }
 
-                // Process Detail
-                if (jsonDetail.has("songs") && jsonDetail.getJSONArray("songs").length() > 0) {
-                    JSONObject songObj = jsonDetail.getJSONArray("songs").getJSONObject(0);
-                    result.put("name", songObj.optString("name", ""));
+    /**
+     * Resolves everything the player needs for one song. The url, detail and lyric requests are
+     * issued at the same time and each result is posted as soon as it arrives, so playback can
+     * start after a single round-trip instead of waiting for all three. The returned handle
+     * cancels all three.
+     */
+    public RequestHandle getSongFullInfo(String id, SongInfoCallback callback) {
+        return getSongFullInfo(id, true, callback);
+    }
 
-                    JSONObject al = songObj.optJSONObject("al");
-                    if (al != null) {
-                        result.put("al_name", al.optString("name", ""));
-                        result.put("pic", al.optString("picUrl", ""));
-                    }
+    // withUrl false skips the url request, for a song played from its download: only onDetail
+    // and onLyric are called then
+    public RequestHandle getSongFullInfo(String id, boolean withUrl, SongInfoCallback callback) {
+        RequestHandle handle = new RequestHandle();
 
-                    JSONArray ar = songObj.optJSONArray("ar");
-                    if (ar != null) {
-                        StringBuilder sb = new StringBuilder();
-                        for (int k = 0; k < ar.length(); k++) {
-                            if (k > 0) sb.append("/");
-                            sb.append(ar.getJSONObject(k).optString("name"));
-                        }
-                        result.put("ar_name", sb.toString());
-                    }
+        // 1. Song URL (playback critical, failures are reported)
+        if (withUrl) {
+            handle.add(songUrl(id, new ResultCallback<SongUrl>() {
+                @Override
+                public void onSuccess(SongUrl songUrl) {
+                    callback.onUrl(songUrl);
                 }
 
-                // Process Lyric
-                if (jsonLyric.has("lrc")) {
-                    result.put("lyric", jsonLyric.getJSONObject("lrc").optString("lyric", ""));
+                @Override
+                public void onError(String error) {
+                    callback.onError(error);
                 }
-                if (jsonLyric.has("tlyric")) {
-                    result.put("tlyric", jsonLyric.getJSONObject("tlyric").optString("lyric", ""));
+            }));
+        }
+
+        // 2. Song Detail (Name, Pic, etc), from the metadata store when it is fresh
+        handle.add(songDetail(id, new ResultCallback<List<Song>>() {
+            @Override
+            public void onSuccess(List<Song> songs) {
+                if (!songs.isEmpty()) {
+                    callback.onDetail(songs.get(0));
                 }
+            }
 
-                result.put("id", id);
-                result.put("status", 200);
+            @Override
+            public void onError(String error) {
+                android.util.Log.w("NeteaseApi", "songDetail failed: " + error);
+            }
+        }));
 
-                postSuccess(callback, result.toString());
+        // 3. Lyrics, from the archive when this song was played before
+        handle.add(lyric(id, new ResultCallback<Lyric>() {
+            @Override
+            public void onSuccess(Lyric lyric) {
+                callback.onLyric(lyric);
+            }
 
-            } catch (Exception e) {
-                postError(callback, e.getMessage());
+            @Override
+            public void onError(String error) {
+                android.util.Log.w("NeteaseApi", "lyric failed: " + error);
+                callback.onLyric(new Lyric("", "", ""));
             }
-        }).start();
+        }));
+        return handle;
+    }
+
+    private interface BodyDecoder<T> {
+        T decode(Reader body) throws IOException;
     }
 
-    private void execute(Request request, ApiCallback callback) {
-        client.newCall(request).enqueue(new Callback() {
+    // Decode the response body on the OkHttp thread, straight off the stream, and post the result.
+    // Calls with the same key that overlap in time are coalesced: only the first one goes to the
+    // network, every caller receives the same decoded result. Cancelling a handle only detaches
+    // its caller; the shared call itself is cancelled once no caller is left waiting on it.
+    @SuppressWarnings("unchecked")
+    private <T> void execute(String key, Request request, BodyDecoder<T> decoder, ResultCallback<T> callback,
+                             RequestHandle handle) {
+        SingleFlight<Object>.Ticket ticket = inFlight.join(key, (result, error) -> {
+            if (handle.isCancelled()) return;
+            if (error != null) {
+                callback.onError(error);
+            } else {
+                callback.onSuccess((T) result);
+            }
+        });
+        handle.onCancel(ticket::leave);
+        if (!ticket.isLeader()) return;
+
+        Call call = client.newCall(request);
+        ticket.setOnAbandoned(call::cancel);
+        call.enqueue(new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
-                postError(callback, e.getMessage());
+                complete(ticket, null, String.valueOf(e.getMessage()));
             }
 
             @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                if (response.isSuccessful()) {
-                    postSuccess(callback, response.body().string());
-                } else {
-                    postError(callback, "HTTP Error: " + response.code());
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful()) {
+                        complete(ticket, null, "HTTP Error: " + response.code());
+                        return;
+                    }
+                    complete(ticket, decoder.decode(body.charStream()), null);
+                } catch (Exception e) {
+                    complete(ticket, null, String.valueOf(e.getMessage()));
                 }
             }
         });
     }
 
-    private void postSuccess(ApiCallback callback, String result) {
-        android.util.Log.d("NeteaseApi", "Response Success Body: " + result);
-        mainHandler.post(() -> callback.onSuccess(result));
+    // Hand the result to everyone waiting on the flight, on the main thread
+    private void complete(SingleFlight<Object>.Ticket ticket, Object result, String error) {
+        mainHandler.post(() -> ticket.complete(result, error));
+    }
+
+    public static long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    public static String dumpStats() {
+        return inFlight + " cacheHits=" + getCacheHitCount() + "\n" + CoverLoader.dumpStats();
+    }
+
+    // Post to the main thread unless the request was cancelled by the time the task runs
+    private void post(RequestHandle handle, Runnable task) {
+        mainHandler.post(() -> {
+            if (!handle.isCancelled()) task.run();
+        });
     }
 
-    private void postError(ApiCallback callback, String error) {
-        mainHandler.post(() -> callback.onError(error));
+    private void postError(RequestHandle handle, PlaylistCallback callback, String error) {
+        post(handle, () -> callback.onError(error));
     }
 }
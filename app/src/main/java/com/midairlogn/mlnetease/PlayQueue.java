@@ -0,0 +1,241 @@
+package com.midairlogn.mlnetease;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable play queue. Every entry has an id that stays the same while it is moved around and is
+ * never reused, so the same song queued twice is still two entries.
+ *
+ * Entries are kept in a persistent randomized binary tree keyed by position: insert, remove, move
+ * and get are O(log n) expected, and an edit returns a new queue sharing all untouched nodes with
+ * the old one. That lets {@link MusicPlayerManager} publish every edit as a snapshot other threads
+ * can read without locking, without copying a 10k-track list each time.
+ *
+ * An entry refers to a row of a {@link SongTable} rather than holding a Song, so get() returns a
+ * new Song each time; compare entries by id, not by the songs returned. Once an entry's details
+ * are resolved, {@link #withSong} replaces its row with the resolved Song.
+ */
+public final class PlayQueue extends AbstractList<Song> {
+
+    public static final PlayQueue EMPTY = new PlayQueue(null);
+
+    private static final AtomicLong nextEntryId = new AtomicLong(1);
+
+    /**
+     * What one edit did, in the terms RecyclerView.Adapter's notifyItem* calls use.
+     */
+    public static final class Change {
+        public static final int RESET = 0;
+        public static final int INSERTED = 1;
+        public static final int REMOVED = 2;
+        public static final int MOVED = 3;
+        // The song of the entry at position was replaced (see withSong)
+        public static final int CHANGED = 4;
+
+        public final int type;
+        // First affected position, and for MOVED the position it moved to
+        public final int position;
+        public final int count;
+        public final int toPosition;
+
+        private Change(int type, int position, int count, int toPosition) {
+            this.type = type;
+            this.position = position;
+            this.count = count;
+            this.toPosition = toPosition;
+        }
+
+        public static Change reset() {
+            return new Change(RESET, 0, 0, 0);
+        }
+
+        public static Change inserted(int position, int count) {
+            return new Change(INSERTED, position, count, position);
+        }
+
+        public static Change removed(int position, int count) {
+            return new Change(REMOVED, position, count, position);
+        }
+
+        public static Change moved(int from, int to) {
+            return new Change(MOVED, from, 1, to);
+        }
+
+        public static Change changed(int position) {
+            return new Change(CHANGED, position, 1, position);
+        }
+    }
+
+    private static final class Node {
+        final long id;
+        final SongTable table;
+        final int row;
+        // Replaces the table row when set
+        final Song song;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(long id, SongTable table, int row, Song song, Node left, Node right) {
+            this.id = id;
+            this.table = table;
+            this.row = row;
+            this.song = song;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + 1 + size(right);
+        }
+
+        Node withChildren(Node left, Node right) {
+            return left == this.left && right == this.right ? this : new Node(id, table, row, song, left, right);
+        }
+    }
+
+    private final Node root;
+
+    private PlayQueue(Node root) {
+        this.root = root;
+    }
+
+    // A SongTable is referenced as it is (rows appended to it later are not part of the queue),
+    // any other list is copied into a new one
+    public static PlayQueue of(List<Song> songs) {
+        return EMPTY.insertAll(0, songs);
+    }
+
+    @Override
+    public Song get(int index) {
+        Node node = nodeAt(index);
+        return node.song != null ? node.song : node.table.get(node.row);
+    }
+
+    // Stable id of the entry at index
+    public long getEntryId(int index) {
+        return nodeAt(index).id;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    public PlayQueue insert(int index, Song song) {
+        return insertAll(index, Collections.singletonList(song));
+    }
+
+    // songs become new entries starting at index
+    public PlayQueue insertAll(int index, List<Song> songs) {
+        checkPosition(index, size());
+        SongTable table = songs instanceof SongTable ? (SongTable) songs : new SongTable(songs);
+        int count = table.size();
+        if (count == 0) return this;
+        Node[] parts = split(root, index);
+        return new PlayQueue(merge(merge(parts[0], build(table, 0, count)), parts[1]));
+    }
+
+    public PlayQueue removeAt(int index) {
+        checkIndex(index);
+        Node[] head = split(root, index);
+        Node[] tail = split(head[1], 1);
+        return new PlayQueue(merge(head[0], tail[1]));
+    }
+
+    // Moves the entry at from so it ends up at to, keeping its id
+    public PlayQueue move(int from, int to) {
+        checkIndex(from);
+        checkIndex(to);
+        if (from == to) return this;
+        Node[] head = split(root, from);
+        Node[] tail = split(head[1], 1);
+        Node rest = merge(head[0], tail[1]);
+        Node[] at = split(rest, to);
+        return new PlayQueue(merge(merge(at[0], tail[0]), at[1]));
+    }
+
+    // The entry at index, same id, now showing song (e.g. with its resolved details)
+    public PlayQueue withSong(int index, Song song) {
+        checkIndex(index);
+        return new PlayQueue(replace(root, index, song));
+    }
+
+    private static Node replace(Node node, int index, Song song) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return node.withChildren(replace(node.left, index, song), node.right);
+        } else if (index > leftSize) {
+            return node.withChildren(node.left, replace(node.right, index - leftSize - 1, song));
+        }
+        return new Node(node.id, node.table, node.row, song, node.left, node.right);
+    }
+
+    private Node nodeAt(int index) {
+        checkIndex(index);
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        }
+    }
+
+    private static void checkPosition(int index, int size) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Perfectly balanced subtree of new entries for table rows [from, to)
+    private static Node build(SongTable table, int from, int to) {
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        Node left = build(table, from, mid);
+        // Ids follow the list order, assigned left to right
+        long id = nextEntryId.getAndIncrement();
+        return new Node(id, table, mid, null, left, build(table, mid + 1, to));
+    }
+
+    // [first count entries, the rest]; only the nodes on the split path are copied
+    private static Node[] split(Node node, int count) {
+        if (node == null) return new Node[]{null, null};
+        int leftSize = size(node.left);
+        if (count <= leftSize) {
+            Node[] parts = split(node.left, count);
+            return new Node[]{parts[0], node.withChildren(parts[1], node.right)};
+        } else {
+            Node[] parts = split(node.right, count - leftSize - 1);
+            return new Node[]{node.withChildren(node.left, parts[0]), parts[1]};
+        }
+    }
+
+    // Concatenation. The root is drawn from either side in proportion to its size, which keeps the
+    // tree a random binary search tree (expected depth O(log n)) without storing priorities.
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (ThreadLocalRandom.current().nextInt(a.size + b.size) < a.size) {
+            return a.withChildren(a.left, merge(a.right, b));
+        } else {
+            return b.withChildren(merge(a, b.left), b.right);
+        }
+    }
+}
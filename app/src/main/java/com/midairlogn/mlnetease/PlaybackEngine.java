@@ -0,0 +1,48 @@
+package com.midairlogn.mlnetease;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * One audio player as {@link MusicPlayerManager} drives it. The manager keeps one engine for the
+ * current track and possibly a second one preparing the next. Engines are created, used and
+ * released on the player thread, and call their listener back on that thread.
+ *
+ * Which implementation is used is chosen in {@link SettingsManager#getPlaybackEngine()}.
+ */
+public interface PlaybackEngine {
+
+    interface Listener {
+        void onPrepared(PlaybackEngine engine);
+        void onCompletion(PlaybackEngine engine);
+        void onError(PlaybackEngine engine, String error);
+        // Playback stalled waiting for data (true) or continued after such a stall (false)
+        void onBuffering(PlaybackEngine engine, boolean buffering);
+    }
+
+    void setListener(Listener listener);
+
+    // Loads a remote track asynchronously; onPrepared or onError follows. cacheKey identifies the
+    // audio itself, which stays the same while the CDN url changes.
+    void prepareStream(String cacheKey, String url) throws IOException;
+
+    // Loads a local file asynchronously; onPrepared or onError follows
+    void prepareFile(File file) throws IOException;
+
+    void start();
+    void pause();
+    void seekTo(int msec);
+    boolean isPlaying();
+    int getCurrentPosition();
+    int getDuration();
+    // 0 (silent) to 1 (full), applied on top of the system volume
+    void setVolume(float volume);
+
+    // Has next start without a gap the moment this engine completes. Returns false when that is
+    // not supported, in which case the caller starts next itself on completion. null clears it.
+    boolean setNext(PlaybackEngine next);
+
+    // Back to the unloaded state, ready to prepare another track
+    void reset();
+    void release();
+}
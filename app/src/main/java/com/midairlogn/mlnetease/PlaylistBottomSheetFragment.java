@@ -13,7 +13,6 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.core.content.ContextCompat;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
-import java.util.Collections;
 import java.util.List;
 
 public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
@@ -23,8 +22,6 @@ public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
     private MusicPlayerManager musicPlayerManager;
     private TextView tvPlaylistTitle;
 
-    private boolean isDragging = false;
-
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -54,20 +51,12 @@ public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
         ItemTouchHelper itemTouchHelper = new ItemTouchHelper(new ItemTouchHelper.SimpleCallback(
                 ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0) {
 
-            @Override
-            public void onSelectedChanged(@Nullable RecyclerView.ViewHolder viewHolder, int actionState) {
-                super.onSelectedChanged(viewHolder, actionState);
-                if (actionState == ItemTouchHelper.ACTION_STATE_DRAG) {
-                    isDragging = true;
-                }
-            }
-
             @Override
             public void clearView(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
                 super.clearView(recyclerView, viewHolder);
-                isDragging = false;
+                // Rows moved during the drag still show their old numbers
                 if (adapter != null) {
-                    adapter.notifyDataSetChanged();
+                    adapter.refreshStatus(0, adapter.getItemCount());
                 }
             }
 
@@ -75,9 +64,10 @@ public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
             public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder, @NonNull RecyclerView.ViewHolder target) {
                 int fromPos = viewHolder.getAdapterPosition();
                 int toPos = target.getAdapterPosition();
+                if (fromPos == RecyclerView.NO_POSITION || toPos == RecyclerView.NO_POSITION) return false;
 
                 musicPlayerManager.moveInPlaylist(fromPos, toPos);
-                adapter.notifyItemMoved(fromPos, toPos);
+                adapter.moveItem(fromPos, toPos);
                 return true;
             }
 
@@ -88,16 +78,16 @@ public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
         });
         itemTouchHelper.attachToRecyclerView(recyclerView);
 
-        musicPlayerManager.addOnPlaylistChangedListener(playlist -> {
-            if (adapter != null && !isDragging) {
-                adapter.setSongs(playlist);
+        musicPlayerManager.addOnPlaylistChangedListener((playlist, change) -> {
+            if (adapter != null) {
+                adapter.applyChange(playlist, change);
             }
             updateTitle();
         });
 
         musicPlayerManager.addOnSongChangedListener(song -> {
             if (adapter != null) {
-                adapter.notifyDataSetChanged();
+                adapter.refreshStatus(0, adapter.getItemCount());
             }
         });
     }
@@ -110,15 +100,94 @@ public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
     }
 
     private class PlaylistAdapter extends RecyclerView.Adapter<PlaylistAdapter.ViewHolder> {
-        private List<Song> songs;
+        // Partial rebind: only the sequence number and the current-track highlight
+        private final Object PAYLOAD_STATUS = new Object();
+
+        // What is on screen: the manager's queue, or while drags are pending, our own moved copy
+        private PlayQueue songs;
+        // Moves made here by a drag that the manager has not reported back yet
+        private int pendingLocalMoves = 0;
+        // Songs got their details while moves were pending; rebind once the queue is adopted
+        private boolean staleRows = false;
 
-        public PlaylistAdapter(List<Song> songs) {
+        public PlaylistAdapter(PlayQueue songs) {
             this.songs = songs;
+            setHasStableIds(true);
         }
 
-        public void setSongs(List<Song> songs) {
-            this.songs = songs;
-            notifyDataSetChanged();
+        // One edit from the manager, applied as the matching minimal update
+        public void applyChange(PlayQueue queue, PlayQueue.Change change) {
+            if (pendingLocalMoves > 0) {
+                if (change.type == PlayQueue.Change.MOVED) {
+                    // Our own drag coming back: the rows are already where they belong. The
+                    // manager's queue is behind the screen until every move is back.
+                    pendingLocalMoves--;
+                    if (pendingLocalMoves == 0) adoptAfterMoves(queue);
+                    return;
+                }
+                if (change.type == PlayQueue.Change.CHANGED) {
+                    // Rows are unchanged; only the text of one is out of date
+                    staleRows = true;
+                    return;
+                }
+                // Someone else's edit: the manager's queue wins, and the drags still on their
+                // way come back as ordinary moves on top of it
+                pendingLocalMoves = 0;
+                staleRows = false;
+                songs = queue;
+                notifyDataSetChanged();
+                return;
+            }
+
+            songs = queue;
+            switch (change.type) {
+                case PlayQueue.Change.INSERTED:
+                    notifyItemRangeInserted(change.position, change.count);
+                    refreshStatus(change.position + change.count, getItemCount());
+                    break;
+                case PlayQueue.Change.REMOVED:
+                    notifyItemRangeRemoved(change.position, change.count);
+                    refreshStatus(change.position, getItemCount());
+                    break;
+                case PlayQueue.Change.MOVED:
+                    notifyItemMoved(change.position, change.toPosition);
+                    refreshStatus(Math.min(change.position, change.toPosition),
+                            Math.max(change.position, change.toPosition) + 1);
+                    break;
+                case PlayQueue.Change.CHANGED:
+                    notifyItemChanged(change.position);
+                    break;
+                default:
+                    notifyDataSetChanged();
+                    break;
+            }
+        }
+
+        private void adoptAfterMoves(PlayQueue queue) {
+            songs = queue;
+            if (staleRows) {
+                staleRows = false;
+                notifyItemRangeChanged(0, getItemCount());
+            }
+        }
+
+        // Dragged by the user; the manager is told separately and reports the move back
+        public void moveItem(int from, int to) {
+            songs = songs.move(from, to);
+            pendingLocalMoves++;
+            notifyItemMoved(from, to);
+        }
+
+        // Rebinds number and highlight of rows [from, to)
+        public void refreshStatus(int from, int to) {
+            if (to > from) {
+                notifyItemRangeChanged(from, to - from, PAYLOAD_STATUS);
+            }
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return songs.getEntryId(position);
         }
 
         @NonNull
@@ -128,22 +197,21 @@ public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
             return new ViewHolder(view);
         }
 
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.contains(PAYLOAD_STATUS)) {
+                bindStatus(holder, position);
+            } else {
+                onBindViewHolder(holder, position);
+            }
+        }
+
         @Override
         public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
             Song song = songs.get(position);
             holder.title.setText(song.name);
             holder.artist.setText(song.artists);
-            holder.sequence.setText(String.valueOf(position + 1));
-
-            int currentIndex = musicPlayerManager.getCurrentIndex();
-            if (position == currentIndex) {
-                int color = ContextCompat.getColor(holder.itemView.getContext(), R.color.brand_primary);
-                holder.title.setTextColor(color);
-                holder.sequence.setTextColor(color);
-            } else {
-                holder.title.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_primary));
-                holder.sequence.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_secondary));
-            }
+            bindStatus(holder, position);
 
             holder.itemView.setOnClickListener(v -> {
                 musicPlayerManager.play(holder.getAdapterPosition());
@@ -155,6 +223,20 @@ public class PlaylistBottomSheetFragment extends BottomSheetDialogFragment {
             });
         }
 
+        private void bindStatus(@NonNull ViewHolder holder, int position) {
+            holder.sequence.setText(String.valueOf(position + 1));
+
+            // By entry, not index: the current index may not have caught up with a pending move
+            if (songs.getEntryId(position) == musicPlayerManager.getCurrentEntryId()) {
+                int color = ContextCompat.getColor(holder.itemView.getContext(), R.color.brand_primary);
+                holder.title.setTextColor(color);
+                holder.sequence.setTextColor(color);
+            } else {
+                holder.title.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_primary));
+                holder.sequence.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.text_secondary));
+            }
+        }
+
         @Override
         public int getItemCount() {
             return songs.size();
@@ -0,0 +1,47 @@
+package com.midairlogn.mlnetease;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Returned by NeteaseApi for every request. cancel() stops the underlying work (OkHttp calls are
+ * cancelled, background tasks interrupted) and guarantees the callback is not invoked afterwards.
+ * A handle may group several requests, e.g. the url, detail and lyric legs of one song.
+ */
+public class RequestHandle {
+    private boolean cancelled = false;
+    private List<Runnable> cancelActions = new ArrayList<>(2);
+
+    public void cancel() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            actions = cancelActions;
+            cancelActions = null;
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Registers what cancel() has to undo. Runs it right away if already cancelled.
+    void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    // Cancelling this handle also cancels child
+    void add(RequestHandle child) {
+        onCancel(child::cancel);
+    }
+}
@@ -0,0 +1,15 @@
+package com.midairlogn.mlnetease;
+
+import java.util.List;
+
+public class SearchPage {
+    public String keyword;
+    public List<Song> songs;
+    public int songCount;
+
+    public SearchPage(String keyword, List<Song> songs, int songCount) {
+        this.keyword = keyword;
+        this.songs = songs;
+        this.songCount = songCount;
+    }
+}
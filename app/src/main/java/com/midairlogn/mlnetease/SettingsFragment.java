@@ -1,5 +1,6 @@
 package com.midairlogn.mlnetease;
 
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.graphics.Color;
 import android.net.Uri;
@@ -26,7 +27,9 @@ public class SettingsFragment extends Fragment {
     private SettingsManager settingsManager;
     private EditText inputMusicU;
     private EditText inputSearchLimit;
+    private EditText inputCrossfade;
     private RadioGroup qualityGroup;
+    private RadioGroup engineGroup;
     private Button btnSave;
 
     // Floating Window
@@ -52,7 +55,9 @@ public class SettingsFragment extends Fragment {
 
         inputMusicU = view.findViewById(R.id.input_music_u);
         inputSearchLimit = view.findViewById(R.id.input_search_limit);
+        inputCrossfade = view.findViewById(R.id.input_crossfade);
         qualityGroup = view.findViewById(R.id.quality_group);
+        engineGroup = view.findViewById(R.id.engine_group);
         btnSave = view.findViewById(R.id.btn_save_cookie);
 
         // Floating Window Views
@@ -78,10 +83,16 @@ public class SettingsFragment extends Fragment {
         String infoText = "Version: v" + versionName + "   Author: <a href=\"https://github.com/midairlogn\">Midairlogn</a><br>" +
                 "<a href=\"https://github.com/midairlogn/ML-Netease_Android\">ML-Netease_Android</a> © 2025 | GPLv3 LICENSE";
         versionInfo.setText(Html.fromHtml(infoText, Html.FROM_HTML_MODE_LEGACY));
+        // Hidden debug entry: long-press the version line for the request, pool and player counters
+        versionInfo.setOnLongClickListener(v -> {
+            showDebugStats();
+            return true;
+        });
 
         // Init values
         inputMusicU.setText(settingsManager.getMusicU());
         inputSearchLimit.setText(String.valueOf(settingsManager.getSearchLimit()));
+        inputCrossfade.setText(String.valueOf(settingsManager.getCrossfadeSeconds()));
         String currentQuality = settingsManager.getQuality();
 
         switch (currentQuality) {
@@ -94,6 +105,12 @@ public class SettingsFragment extends Fragment {
             default: qualityGroup.check(R.id.quality_standard); break;
         }
 
+        if (SettingsManager.ENGINE_EXOPLAYER.equals(settingsManager.getPlaybackEngine())) {
+            engineGroup.check(R.id.engine_exoplayer);
+        } else {
+            engineGroup.check(R.id.engine_mediaplayer);
+        }
+
         // Floating Window Init
         boolean isFloatingEnabled = settingsManager.isFloatingLyricsEnabled();
         switchFloatingLyrics.setChecked(isFloatingEnabled);
@@ -166,6 +183,20 @@ public class SettingsFragment extends Fragment {
                 }
             }
 
+            String crossfadeStr = inputCrossfade.getText().toString().trim();
+            if (!crossfadeStr.isEmpty()) {
+                try {
+                    int seconds = Integer.parseInt(crossfadeStr);
+                    if (seconds < 0 || seconds > SettingsManager.MAX_CROSSFADE_SECONDS) {
+                        Toast.makeText(getContext(), "Crossfade must be 0-12 seconds", Toast.LENGTH_SHORT).show();
+                    } else {
+                        settingsManager.setCrossfadeSeconds(seconds);
+                    }
+                } catch (NumberFormatException e) {
+                    Toast.makeText(getContext(), "Invalid crossfade seconds", Toast.LENGTH_SHORT).show();
+                }
+            }
+
             int selectedId = qualityGroup.getCheckedRadioButtonId();
             String quality = "standard";
             if (selectedId == R.id.quality_higher) quality = "higher";
@@ -176,6 +207,9 @@ public class SettingsFragment extends Fragment {
 
             settingsManager.setQuality(quality);
 
+            settingsManager.setPlaybackEngine(engineGroup.getCheckedRadioButtonId() == R.id.engine_exoplayer
+                    ? SettingsManager.ENGINE_EXOPLAYER : SettingsManager.ENGINE_MEDIA_PLAYER);
+
             // Floating Window Save
             boolean enabled = switchFloatingLyrics.isChecked();
             settingsManager.setFloatingLyricsEnabled(enabled);
@@ -216,6 +250,7 @@ public class SettingsFragment extends Fragment {
         // Refresh values from SharedPreferences in case they were changed elsewhere (e.g. Floating Window)
         inputMusicU.setText(settingsManager.getMusicU());
         inputSearchLimit.setText(String.valueOf(settingsManager.getSearchLimit()));
+        inputCrossfade.setText(String.valueOf(settingsManager.getCrossfadeSeconds()));
 
         String currentQuality = settingsManager.getQuality();
         switch (currentQuality) {
@@ -228,6 +263,12 @@ public class SettingsFragment extends Fragment {
             default: qualityGroup.check(R.id.quality_standard); break;
         }
 
+        if (SettingsManager.ENGINE_EXOPLAYER.equals(settingsManager.getPlaybackEngine())) {
+            engineGroup.check(R.id.engine_exoplayer);
+        } else {
+            engineGroup.check(R.id.engine_mediaplayer);
+        }
+
         boolean isFloatingEnabled = settingsManager.isFloatingLyricsEnabled();
         // Avoid triggering listener if value is same
         switchFloatingLyrics.setOnCheckedChangeListener(null);
@@ -290,4 +331,16 @@ public class SettingsFragment extends Fragment {
             btnColorPurple.setTextColor(Color.WHITE);
         }
     }
+
+    private void showDebugStats() {
+        String stats = NeteaseApi.dumpStats()
+                + "\n\n" + AppExecutors.dumpStats()
+                + "\n\n" + MusicPlayerManager.getInstance(requireContext()).dumpStats()
+                + "\n\n" + SongDownloadManager.getInstance(requireContext()).dumpStats();
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Debug stats")
+                .setMessage(stats)
+                .setPositiveButton("OK", null)
+                .show();
+    }
 }
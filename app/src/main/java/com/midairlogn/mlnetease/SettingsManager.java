@@ -11,6 +11,18 @@ public class SettingsManager {
     private static final String KEY_FLOATING_LYRICS_ENABLED = "floating_lyrics_enabled";
     private static final String KEY_LYRIC_COLOR = "lyric_color";
     private static final String KEY_LYRIC_SIZE = "lyric_size";
+    private static final String KEY_PREFETCH_LEAD_SECONDS = "prefetch_lead_seconds";
+    private static final String KEY_PLAYBACK_ENGINE = "playback_engine";
+    private static final String KEY_CROSSFADE_SECONDS = "crossfade_seconds";
+    private static final String KEY_MIN_BUFFER_MS = "min_buffer_ms";
+    private static final String KEY_MAX_BUFFER_MS = "max_buffer_ms";
+    private static final String KEY_BUFFER_FOR_PLAYBACK_MS = "buffer_for_playback_ms";
+    private static final String KEY_BUFFER_AFTER_REBUFFER_MS = "buffer_after_rebuffer_ms";
+
+    public static final String ENGINE_MEDIA_PLAYER = "mediaplayer";
+    public static final String ENGINE_EXOPLAYER = "exoplayer";
+
+    public static final int MAX_CROSSFADE_SECONDS = 12;
 
     private SharedPreferences prefs;
 
@@ -67,6 +79,69 @@ public class SettingsManager {
         return prefs.getFloat(KEY_LYRIC_SIZE, 16f); // Default 16sp
     }
 
+    public void setPrefetchLeadSeconds(int seconds) {
+        prefs.edit().putInt(KEY_PREFETCH_LEAD_SECONDS, seconds).apply();
+    }
+
+    public int getPrefetchLeadSeconds() {
+        // How long before the end of a track the next one is resolved and prepared
+        return prefs.getInt(KEY_PREFETCH_LEAD_SECONDS, 30);
+    }
+
+    public void setPlaybackEngine(String engine) {
+        prefs.edit().putString(KEY_PLAYBACK_ENGINE, engine).apply();
+    }
+
+    public String getPlaybackEngine() {
+        // Takes effect from the next track that is loaded
+        return prefs.getString(KEY_PLAYBACK_ENGINE, ENGINE_MEDIA_PLAYER);
+    }
+
+    public void setCrossfadeSeconds(int seconds) {
+        prefs.edit().putInt(KEY_CROSSFADE_SECONDS, Math.max(0, Math.min(seconds, MAX_CROSSFADE_SECONDS))).apply();
+    }
+
+    public int getCrossfadeSeconds() {
+        // Overlap between the end of a track and the start of the next; 0 means a gapless cut
+        int seconds = prefs.getInt(KEY_CROSSFADE_SECONDS, 0);
+        return Math.max(0, Math.min(seconds, MAX_CROSSFADE_SECONDS));
+    }
+
+    // Buffer durations used by the ExoPlayer engine
+    public void setMinBufferMs(int ms) {
+        prefs.edit().putInt(KEY_MIN_BUFFER_MS, ms).apply();
+    }
+
+    public int getMinBufferMs() {
+        return prefs.getInt(KEY_MIN_BUFFER_MS, 15000);
+    }
+
+    public void setMaxBufferMs(int ms) {
+        prefs.edit().putInt(KEY_MAX_BUFFER_MS, ms).apply();
+    }
+
+    public int getMaxBufferMs() {
+        return prefs.getInt(KEY_MAX_BUFFER_MS, 60000);
+    }
+
+    public void setBufferForPlaybackMs(int ms) {
+        prefs.edit().putInt(KEY_BUFFER_FOR_PLAYBACK_MS, ms).apply();
+    }
+
+    public int getBufferForPlaybackMs() {
+        // Buffered audio needed before a track starts; lower starts faster
+        return prefs.getInt(KEY_BUFFER_FOR_PLAYBACK_MS, 1500);
+    }
+
+    public void setBufferAfterRebufferMs(int ms) {
+        prefs.edit().putInt(KEY_BUFFER_AFTER_REBUFFER_MS, ms).apply();
+    }
+
+    public int getBufferAfterRebufferMs() {
+        // Buffered audio needed to continue after a stall; higher stalls less often
+        return prefs.getInt(KEY_BUFFER_AFTER_REBUFFER_MS, 3000);
+    }
+
     public static final String[] QUALITY_OPTIONS = {
         "standard", "exhigh", "lossless", "hires", "sky", "jyeffect", "jymaster"
     };
@@ -0,0 +1,249 @@
+package com.midairlogn.mlnetease;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Play order for shuffle mode: a Fisher-Yates permutation of the playlist indices with a cursor on
+ * the current track. Entries before the cursor are the history, entries after it the tracks still
+ * to come, so next and previous are plain array reads and the upcoming track is known in advance.
+ *
+ * Playlist edits are applied to the permutation in place rather than reshuffling, so neither the
+ * history nor the upcoming order changes under the listener. Once every track has played a new
+ * round follows: it is shuffled when first peeked at and only entered by moveTo(), so peeking
+ * never changes the order. Each round opens with the track that closed the one before, and the
+ * previous round is kept so that previous still works across the boundary.
+ *
+ * Not thread-safe; {@link MusicPlayerManager} uses it on its player thread only.
+ */
+public class ShuffleOrder {
+    private final Random random;
+    // order[step] is the playlist index played at that step, positions[index] its step
+    private int[] order = new int[0];
+    private int[] positions = new int[0];
+    private int size = 0;
+    // Step of the current track, -1 before the first one
+    private int cursor = -1;
+    // The round before this one and the one after it, or null. Each is valid only while its
+    // boundary track matches: the last of previousRound and the first of nextRound are order[0]
+    // and order[size - 1] respectively.
+    private int[] previousRound;
+    private int[] nextRound;
+
+    public ShuffleOrder(Random random) {
+        this.random = random;
+    }
+
+    // Shuffles indices 0..size-1 afresh. A valid first is kept at the start as the current track.
+    public void reset(int size, int first) {
+        this.size = 0;
+        ensureCapacity(size);
+        this.size = size;
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        cursor = shuffle(order, size, first) ? 0 : -1;
+        updatePositions(0, size - 1);
+        previousRound = null;
+        nextRound = null;
+    }
+
+    // Playlist index after the current one, or -1 for an empty playlist
+    public int peekNext() {
+        if (size == 0) return -1;
+        if (cursor + 1 < size) return order[cursor + 1];
+        // Every track has had its turn: the next round opens with the one just played
+        int last = order[size - 1];
+        if (nextRound == null || nextRound[0] != last) {
+            nextRound = new int[size];
+            for (int i = 0; i < size; i++) nextRound[i] = i;
+            shuffle(nextRound, size, last);
+        }
+        return nextRound[size > 1 ? 1 : 0];
+    }
+
+    // Playlist index played before the current one, or -1 before the first track of the round
+    // with no previous round left
+    public int peekPrevious() {
+        if (cursor > 0) return order[cursor - 1];
+        if (cursor == 0 && hasPreviousRound()) return previousRound[size - 2];
+        return -1;
+    }
+
+    // Makes index the current track. Stepping to the next or previous entry only moves the cursor;
+    // a track picked from elsewhere is taken out of its place and played right after the current
+    // one, which becomes its previous.
+    public void moveTo(int index) {
+        if (index < 0 || index >= size) return;
+        if (cursor >= 0 && order[cursor] == index) return;
+        if (cursor == size - 1 && size > 1 && peekNext() == index) {
+            // Into the next round, keeping this one as the previous
+            previousRound = Arrays.copyOf(order, size);
+            enterRound(nextRound, 1);
+            nextRound = null;
+            return;
+        }
+        if (cursor + 1 < size && order[cursor + 1] == index) {
+            cursor++;
+            return;
+        }
+        if (cursor > 0 && order[cursor - 1] == index) {
+            cursor--;
+            return;
+        }
+
+        int step = positions[index];
+        if (step > cursor) {
+            moveEntry(step, cursor + 1);
+            cursor++;
+        } else {
+            // From the history: the entries after it close up, so it lands on the cursor
+            moveEntry(step, cursor);
+        }
+    }
+
+    // Steps back to peekPrevious(), into the previous round at the start of this one. Separate from
+    // moveTo() because across rounds the previous track may also be the next one.
+    public void previous() {
+        if (cursor > 0) {
+            cursor--;
+        } else if (cursor == 0 && hasPreviousRound()) {
+            // This round stays queued as the next one
+            nextRound = Arrays.copyOf(order, size);
+            enterRound(previousRound, size - 2);
+            previousRound = null;
+        }
+    }
+
+    // A track was inserted into the playlist at index; it gets a random place among those to come.
+    // The other rounds lack it, so they are dropped: the next one is shuffled again when needed.
+    public void insert(int index) {
+        if (index < 0 || index > size) return;
+        previousRound = null;
+        nextRound = null;
+        ensureCapacity(size + 1);
+        if (index < size) {
+            for (int step = 0; step < size; step++) {
+                if (order[step] >= index) order[step]++;
+            }
+        }
+
+        int slot = cursor + 1 + random.nextInt(size - cursor);
+        System.arraycopy(order, slot, order, slot + 1, size - slot);
+        order[slot] = index;
+        size++;
+        updatePositions(index < size - 1 ? 0 : slot, size - 1);
+    }
+
+    // The track at index was removed from the playlist. If it was the current one, the cursor
+    // steps back so that peekNext() is the track that would have followed it.
+    public void remove(int index) {
+        if (index < 0 || index >= size) return;
+        int step = positions[index];
+        System.arraycopy(order, step + 1, order, step, size - step - 1);
+        size--;
+        for (int s = 0; s < size; s++) {
+            if (order[s] > index) order[s]--;
+        }
+        if (step <= cursor) cursor--;
+        updatePositions(0, size - 1);
+        previousRound = removeFrom(previousRound, index);
+        nextRound = removeFrom(nextRound, index);
+    }
+
+    // The track at from was moved to to in the playlist. Only indices change, not the play order.
+    public void move(int from, int to) {
+        if (from == to || from < 0 || from >= size || to < 0 || to >= size) return;
+        renumber(order, size, from, to);
+        if (previousRound != null) renumber(previousRound, size, from, to);
+        if (nextRound != null) renumber(nextRound, size, from, to);
+        updatePositions(0, size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Shuffles round[0..size-1] in place; a valid first is put at the start. Returns whether it was.
+    private boolean shuffle(int[] round, int size, int first) {
+        int from = 0;
+        if (first >= 0 && first < size) {
+            int step = 0;
+            while (round[step] != first) step++;
+            round[step] = round[0];
+            round[0] = first;
+            from = 1;
+        }
+        for (int i = size - 1; i > from; i--) {
+            int j = from + random.nextInt(i - from + 1);
+            int tmp = round[i];
+            round[i] = round[j];
+            round[j] = tmp;
+        }
+        return from == 1;
+    }
+
+    private boolean hasPreviousRound() {
+        return previousRound != null && size > 1 && previousRound[size - 1] == order[0];
+    }
+
+    private void enterRound(int[] round, int step) {
+        System.arraycopy(round, 0, order, 0, size);
+        cursor = step;
+        updatePositions(0, size - 1);
+    }
+
+    // round without index, renumbered for its removal from the playlist; called after size shrank
+    private int[] removeFrom(int[] round, int index) {
+        if (round == null) return null;
+        int[] shrunk = new int[size];
+        int step = 0;
+        for (int entry : round) {
+            if (entry != index) shrunk[step++] = entry > index ? entry - 1 : entry;
+        }
+        return shrunk;
+    }
+
+    private static void renumber(int[] round, int size, int from, int to) {
+        for (int step = 0; step < size; step++) {
+            int index = round[step];
+            if (index == from) {
+                round[step] = to;
+            } else if (from < to && index > from && index <= to) {
+                round[step] = index - 1;
+            } else if (to < from && index >= to && index < from) {
+                round[step] = index + 1;
+            }
+        }
+    }
+
+    // Moves the entry at step from to step to, shifting those in between by one
+    private void moveEntry(int from, int to) {
+        int index = order[from];
+        if (from < to) {
+            System.arraycopy(order, from + 1, order, from, to - from);
+        } else {
+            System.arraycopy(order, to, order, to + 1, from - to);
+        }
+        order[to] = index;
+        updatePositions(Math.min(from, to), Math.max(from, to));
+    }
+
+    private void updatePositions(int fromStep, int toStep) {
+        for (int step = fromStep; step <= toStep; step++) {
+            positions[order[step]] = step;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= order.length) return;
+        int length = Math.max(capacity, order.length * 2);
+        int[] grownOrder = new int[length];
+        System.arraycopy(order, 0, grownOrder, 0, size);
+        order = grownOrder;
+        int[] grownPositions = new int[length];
+        System.arraycopy(positions, 0, grownPositions, 0, size);
+        positions = grownPositions;
+    }
+}
@@ -0,0 +1,178 @@
+package com.midairlogn.mlnetease;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deduplicates concurrent identical work. Callers asking for the same key while a call for it is
+ * in flight do not start their own; they receive the result of the call already running. Nothing
+ * is kept once the call completes, so this is not a cache.
+ *
+ * Two forms are offered: {@link #join} for callback-based work (the first caller starts the work
+ * and reports back through its {@link Ticket}), and {@link #run} for blocking work on a worker
+ * thread.
+ */
+public class SingleFlight<T> {
+
+    public interface Listener<T> {
+        // Exactly one of result / error is meaningful: error is null on success
+        void onComplete(T result, String error);
+    }
+
+    private final String name;
+    private final Map<String, Flight> waiting = new HashMap<>();
+    private final Map<String, FutureTask<T>> running = new HashMap<>();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    // One callback-based call and everyone waiting on it
+    private class Flight {
+        final String key;
+        final List<Listener<T>> listeners = new ArrayList<>(2);
+        Runnable onAbandoned;
+        boolean done = false;
+        boolean abandoned = false;
+
+        Flight(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A caller's membership in a flight. The leader starts the work and reports its outcome with
+     * complete(); any member can leave(). When the last member leaves before completion the flight
+     * is abandoned and its onAbandoned action (e.g. cancelling the HTTP call) runs.
+     */
+    public class Ticket {
+        private final Flight flight;
+        private final Listener<T> listener;
+        private final boolean leader;
+
+        Ticket(Flight flight, Listener<T> listener, boolean leader) {
+            this.flight = flight;
+            this.listener = listener;
+            this.leader = leader;
+        }
+
+        public boolean isLeader() {
+            return leader;
+        }
+
+        public void complete(T result, String error) {
+            List<Listener<T>> listeners;
+            synchronized (waiting) {
+                if (flight.done) return;
+                flight.done = true;
+                if (waiting.get(flight.key) == flight) waiting.remove(flight.key);
+                listeners = new ArrayList<>(flight.listeners);
+            }
+            for (Listener<T> l : listeners) {
+                l.onComplete(result, error);
+            }
+        }
+
+        public void setOnAbandoned(Runnable action) {
+            synchronized (waiting) {
+                if (!flight.abandoned) {
+                    flight.onAbandoned = action;
+                    return;
+                }
+            }
+            action.run();
+        }
+
+        public void leave() {
+            Runnable abandon;
+            synchronized (waiting) {
+                if (flight.done || !flight.listeners.remove(listener) || !flight.listeners.isEmpty()) return;
+                flight.done = true;
+                flight.abandoned = true;
+                if (waiting.get(flight.key) == flight) waiting.remove(flight.key);
+                abandon = flight.onAbandoned;
+            }
+            abandonedCount.incrementAndGet();
+            if (abandon != null) abandon.run();
+        }
+    }
+
+    // Joins the flight for key, starting a new one if none is in flight. When the returned ticket
+    // is the leader, the caller must start the work and eventually call ticket.complete().
+    public Ticket join(String key, Listener<T> listener) {
+        synchronized (waiting) {
+            Flight flight = waiting.get(key);
+            boolean leader = flight == null;
+            if (leader) {
+                flight = new Flight(key);
+                waiting.put(key, flight);
+                startedCount.incrementAndGet();
+            } else {
+                coalescedCount.incrementAndGet();
+            }
+            flight.listeners.add(listener);
+            return new Ticket(flight, listener, leader);
+        }
+    }
+
+    // Runs work on the calling thread, or waits for the identical call another thread is running
+    public T run(String key, Callable<T> work) throws Exception {
+        FutureTask<T> task;
+        boolean leader = false;
+        synchronized (running) {
+            task = running.get(key);
+            if (task == null) {
+                task = new FutureTask<>(work);
+                running.put(key, task);
+                leader = true;
+                startedCount.incrementAndGet();
+            } else {
+                coalescedCount.incrementAndGet();
+            }
+        }
+
+        if (leader) {
+            try {
+                task.run();
+            } finally {
+                synchronized (running) {
+                    running.remove(key);
+                }
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getAbandonedCount() {
+        return abandonedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": started=" + getStartedCount() + " coalesced=" + getCoalescedCount()
+                + " abandoned=" + getAbandonedCount();
+    }
+}
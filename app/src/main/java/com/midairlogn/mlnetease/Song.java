@@ -1,11 +1,14 @@
 package com.midairlogn.mlnetease;
 
+// Immutable, so instances can be shared across threads; resolved details make a new Song
 public class Song {
-    public String id;
-    public String name;
-    public String artists;
-    public String album;
-    public String picUrl;
+    public final String id;
+    public final String name;
+    public final String artists;
+    public final String album;
+    public final String picUrl;
+    // id as a number, parsed once; -1 when id is not a plain decimal number
+    private final long numericId;
 
     public Song(String id, String name, String artists, String album, String picUrl) {
         this.id = id;
@@ -13,5 +16,37 @@ public class Song {
         this.artists = artists;
         this.album = album;
         this.picUrl = picUrl;
+        this.numericId = parseId(id);
     }
-}
\ No newline at end of file
+
+    public Song(long id, String name, String artists, String album, String picUrl) {
+        this.id = Long.toString(id);
+        this.name = name;
+        this.artists = artists;
+        this.album = album;
+        this.picUrl = picUrl;
+        this.numericId = id;
+    }
+
+    public long getNumericId() {
+        return numericId;
+    }
+
+    // Netease ids are plain decimal numbers; anything else gives -1 (no regex, no exception)
+    public static long parseId(String id) {
+        if (id == null) return -1;
+        int start = 0;
+        int end = id.length();
+        while (start < end && id.charAt(start) <= ' ') start++;
+        while (end > start && id.charAt(end - 1) <= ' ') end--;
+        if (start == end || end - start > 18) return -1;
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
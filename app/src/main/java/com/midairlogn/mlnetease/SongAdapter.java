@@ -6,28 +6,46 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
-import java.util.ArrayList;
 import java.util.List;
 
 public class SongAdapter extends RecyclerView.Adapter<SongAdapter.ViewHolder> {
 
-    private List<Song> songs = new ArrayList<>();
+    // Rows are materialized as Songs only when bound, so long playlists stay compact
+    private SongTable songs = new SongTable();
     private OnItemClickListener listener;
+    private OnItemLongClickListener longClickListener;
 
     public interface OnItemClickListener {
-        void onItemClick(Song song);
+        // Songs are created per bind, so the position identifies the row
+        void onItemClick(Song song, int position);
+    }
+
+    public interface OnItemLongClickListener {
+        void onItemLongClick(Song song);
     }
 
     public void setOnItemClickListener(OnItemClickListener listener) {
         this.listener = listener;
     }
 
+    public void setOnItemLongClickListener(OnItemLongClickListener listener) {
+        this.longClickListener = listener;
+    }
+
     public void setSongs(List<Song> songs) {
-        this.songs = songs;
+        // A new table, never a cleared one: the play queue may still refer to the old rows
+        this.songs = new SongTable(songs);
         notifyDataSetChanged();
     }
 
-    public List<Song> getSongs() {
+    public void addSongs(List<Song> more) {
+        int start = songs.size();
+        songs.appendAll(more);
+        notifyItemRangeInserted(start, more.size());
+    }
+
+    // Can be handed to the player as is; the queue then shares these rows instead of copying them
+    public SongTable getSongs() {
         return songs;
     }
 
@@ -46,7 +64,12 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.ViewHolder> {
         holder.sequence.setText(String.valueOf(position + 1));
 
         holder.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onItemClick(song);
+            if (listener != null) listener.onItemClick(song, holder.getAdapterPosition());
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            if (longClickListener == null) return false;
+            longClickListener.onItemLongClick(song);
+            return true;
         });
     }
 
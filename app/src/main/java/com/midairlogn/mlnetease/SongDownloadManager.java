@@ -0,0 +1,627 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Keeps songs on the device for offline playback. One song downloads at a time, split into up to
+ * PARALLEL_CHUNKS byte ranges fetched concurrently. Progress of every chunk is checkpointed next to
+ * the partial file, so a download picks up where it stopped after a network drop or process death.
+ * Urls are resolved through {@link NeteaseApi#songUrl} on every (re)start since they expire, and
+ * the finished file is checked against the size the url endpoint reported.
+ */
+public class SongDownloadManager {
+    private static final String TAG = "SongDownloadManager";
+    private static final String DIR_NAME = "downloads";
+    private static final String QUEUE_FILE = "queue";
+    private static final String AUDIO_SUFFIX = ".audio";
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".state";
+
+    private static final int PARALLEL_CHUNKS = 4;
+    // Not worth splitting below this
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long CHECKPOINT_BYTES = 256 * 1024;
+    private static final long THROUGHPUT_WINDOW_MS = 3000;
+
+    private static final int STATE_MAGIC = 0x4D4C444C; // "MLDL"
+    private static final int STATE_VERSION = 1;
+
+    public interface OnDownloadListener {
+        void onProgress(String songId, long downloaded, long total);
+        void onComplete(String songId);
+        void onFailed(String songId, String error);
+    }
+
+    private static SongDownloadManager instance;
+
+    private final File dir;
+    private final NeteaseApi neteaseApi;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+    private final List<OnDownloadListener> listeners = new ArrayList<>();
+
+    // Guarded by this
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private final Set<String> completed = new HashSet<>();
+    // Downloads stopped by a transient error, retried when the network comes back
+    private final Map<String, String> failed = new HashMap<>();
+    private Task active;
+    private boolean restored = false;
+    // Removed while the restore was still running, so it must not bring them back
+    private final Set<String> removedBeforeRestore = new HashSet<>();
+
+    private final AtomicLong totalBytes = new AtomicLong();
+    private long completedCount = 0;
+    private long failedCount = 0;
+    private long windowStart = SystemClock.elapsedRealtime();
+    private long windowBytes = 0;
+    private long bytesPerSecond = 0;
+
+    public static synchronized SongDownloadManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new SongDownloadManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SongDownloadManager(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR_NAME);
+        this.neteaseApi = new NeteaseApi(context);
+
+        // Pick up where we left off after a network drop
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm != null) {
+            cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    retryFailed();
+                }
+            });
+        }
+
+        // Pick up where we left off after process death
+        AppExecutors.diskIO().execute(this::restore);
+    }
+
+    public void addOnDownloadListener(OnDownloadListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOnDownloadListener(OnDownloadListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void enqueue(Song song) {
+        String id = song.id;
+        if (completed.contains(id) || queue.contains(id)) return;
+        removedBeforeRestore.remove(id);
+        failed.remove(id);
+        queue.addLast(id);
+        saveQueue();
+        startNext();
+    }
+
+    // The finished download for this song, or null. Cheap enough for the main thread.
+    public synchronized File getDownloadedFile(String songId) {
+        if (completed.contains(songId)) return audioFile(songId);
+        if (restored || removedBeforeRestore.contains(songId)) return null;
+        // Not restored yet: a finished download is an audio file with no checkpoint left
+        File file = audioFile(songId);
+        return file.exists() && !stateFile(songId).exists() ? file : null;
+    }
+
+    public synchronized boolean isQueued(String songId) {
+        return queue.contains(songId);
+    }
+
+    public synchronized void remove(String songId) {
+        queue.remove(songId);
+        failed.remove(songId);
+        completed.remove(songId);
+        if (!restored) removedBeforeRestore.add(songId);
+        if (active != null && active.songId.equals(songId)) {
+            active.cancelled = true;
+        }
+        saveQueue();
+        AppExecutors.diskIO().execute(() -> {
+            audioFile(songId).delete();
+            partFile(songId).delete();
+            stateFile(songId).delete();
+        });
+    }
+
+    // Ids in the order they will be downloaded, for display
+    public synchronized List<String> getQueue() {
+        return Collections.unmodifiableList(new ArrayList<>(queue));
+    }
+
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    // Download rate over the last few seconds
+    public synchronized long getBytesPerSecond() {
+        rollThroughputWindow();
+        return bytesPerSecond;
+    }
+
+    public synchronized String dumpStats() {
+        rollThroughputWindow();
+        return "downloads: queued=" + queue.size()
+                + " active=" + (active != null ? active.songId : "-")
+                + " completed=" + completedCount
+                + " failed=" + failedCount
+                + " rate=" + (bytesPerSecond / 1024) + "KB/s"
+                + " total=" + (totalBytes.get() / (1024 * 1024)) + "MB";
+    }
+
+    private void restore() {
+        List<String> savedQueue = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        if (dir.isDirectory() || dir.mkdirs()) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    if (name.endsWith(AUDIO_SUFFIX)) {
+                        done.add(name.substring(0, name.length() - AUDIO_SUFFIX.length()));
+                    } else if (name.endsWith(STATE_SUFFIX)) {
+                        savedQueue.add(name.substring(0, name.length() - STATE_SUFFIX.length()));
+                    }
+                }
+            }
+            try (DataInputStream in = new DataInputStream(new FileInputStream(new File(dir, QUEUE_FILE)))) {
+                int count = in.readInt();
+                List<String> ordered = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ordered.add(in.readUTF());
+                }
+                // Saved order first, then any partial download the queue file missed
+                savedQueue.removeAll(ordered);
+                ordered.addAll(savedQueue);
+                savedQueue = ordered;
+            } catch (IOException ignored) {
+                // No queue saved yet
+            }
+        }
+
+        synchronized (this) {
+            done.removeAll(removedBeforeRestore);
+            savedQueue.removeAll(removedBeforeRestore);
+            removedBeforeRestore.clear();
+            completed.addAll(done);
+            for (String id : savedQueue) {
+                if (!completed.contains(id) && !queue.contains(id)) {
+                    queue.addLast(id);
+                }
+            }
+            restored = true;
+            startNext();
+        }
+    }
+
+    private synchronized void retryFailed() {
+        if (failed.isEmpty()) return;
+        for (String id : failed.keySet()) {
+            if (!queue.contains(id)) queue.addLast(id);
+        }
+        failed.clear();
+        saveQueue();
+        startNext();
+    }
+
+    private void startNext() {
+        if (!restored || active != null || queue.isEmpty()) return;
+        Task task = new Task(queue.peekFirst());
+        active = task;
+        Log.d(TAG, "Starting download " + task.songId);
+
+        // Called on the main thread by NeteaseApi
+        neteaseApi.songUrl(task.songId, new NeteaseApi.ResultCallback<SongUrl>() {
+            @Override
+            public void onSuccess(SongUrl songUrl) {
+                if (!songUrl.isPlayable()) {
+                    finish(task, "No playable url (VIP or copyright)", false);
+                } else if (songUrl.size <= 0) {
+                    finish(task, "Server did not report a size", false);
+                } else {
+                    AppExecutors.download().execute(() -> begin(task, songUrl));
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                finish(task, error, true);
+            }
+        });
+    }
+
+    private void begin(Task task, SongUrl songUrl) {
+        if (task.cancelled) {
+            finish(task, null, false);
+            return;
+        }
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            task.url = songUrl.url;
+            // Resume from the checkpoint if it is for the same file, otherwise start over
+            if (!task.loadState() || task.size != songUrl.size || !task.level.equals(songUrl.level)) {
+                task.plan(songUrl.size, songUrl.level != null ? songUrl.level : "");
+                try (RandomAccessFile file = new RandomAccessFile(partFile(task.songId), "rw")) {
+                    file.setLength(task.size);
+                }
+                task.saveState();
+            }
+        } catch (IOException e) {
+            finish(task, e.getMessage(), true);
+            return;
+        }
+
+        int remaining = 0;
+        for (int i = 0; i < task.chunkCount(); i++) {
+            if (!task.isChunkDone(i)) remaining++;
+        }
+        task.pendingChunks = remaining;
+        if (remaining == 0) {
+            verifyAndComplete(task);
+            return;
+        }
+        for (int i = 0; i < task.chunkCount(); i++) {
+            if (task.isChunkDone(i)) continue;
+            int chunk = i;
+            AppExecutors.download().execute(() -> downloadChunk(task, chunk));
+        }
+    }
+
+    private void downloadChunk(Task task, int chunk) {
+        String error = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && !task.cancelled; attempt++) {
+            try {
+                fetchRange(task, chunk);
+                error = null;
+                break;
+            } catch (IOException e) {
+                error = e.getMessage();
+                Log.w(TAG, task.songId + " chunk " + chunk + " attempt " + attempt + " failed: " + error);
+                if (attempt < MAX_ATTEMPTS) {
+                    SystemClock.sleep(1000L * attempt);
+                }
+            }
+        }
+
+        boolean last;
+        synchronized (task) {
+            if (error != null && task.error == null) task.error = error;
+            last = --task.pendingChunks == 0;
+        }
+        if (!last) return;
+
+        if (task.cancelled) {
+            finish(task, null, false);
+        } else if (task.error != null) {
+            task.saveStateQuietly();
+            finish(task, task.error, true);
+        } else {
+            verifyAndComplete(task);
+        }
+    }
+
+    private void fetchRange(Task task, int chunk) throws IOException {
+        long position = task.chunkPosition(chunk);
+        long end = task.chunkEnd(chunk); // exclusive
+        if (position >= end) return;
+
+        Request request = new Request.Builder()
+                .url(task.url)
+                .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Safari/537.36 Chrome/91.0.4472.164 NeteaseMusicDesktop/2.10.2.200154")
+                .header("Referer", "https://music.163.com/")
+                .header("Range", "bytes=" + position + "-" + (end - 1))
+                .build();
+
+        try (Response response = client.newCall(request).execute();
+             RandomAccessFile file = new RandomAccessFile(partFile(task.songId), "rw")) {
+            if (response.code() != 206 && !(response.code() == 200 && position == 0 && end == task.size)) {
+                throw new IOException("HTTP " + response.code() + " for range " + position + "-" + (end - 1));
+            }
+
+            InputStream in = response.body().byteStream();
+            byte[] buffer = new byte[16 * 1024];
+            file.seek(position);
+            long sinceCheckpoint = 0;
+            while (position < end && !task.cancelled) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (n < 0) throw new IOException("Connection closed at " + position);
+                file.write(buffer, 0, n);
+                position += n;
+                sinceCheckpoint += n;
+                task.advance(chunk, n);
+                onBytes(n);
+                if (sinceCheckpoint >= CHECKPOINT_BYTES) {
+                    sinceCheckpoint = 0;
+                    task.saveStateQuietly();
+                    postProgress(task);
+                }
+            }
+        }
+        task.saveStateQuietly();
+        postProgress(task);
+    }
+
+    private void verifyAndComplete(Task task) {
+        File part = partFile(task.songId);
+        long downloaded = task.downloadedBytes();
+        if (downloaded != task.size || part.length() != task.size) {
+            // Checkpoint and file disagree with the server; throw the partial file away
+            Log.w(TAG, task.songId + " size mismatch: got " + downloaded + "/" + part.length() + ", expected " + task.size);
+            part.delete();
+            stateFile(task.songId).delete();
+            finish(task, "Size mismatch", false);
+            return;
+        }
+        if (!part.renameTo(audioFile(task.songId))) {
+            finish(task, "Cannot move finished download", true);
+            return;
+        }
+        stateFile(task.songId).delete();
+        finish(task, null, false);
+    }
+
+    // Ends the active task; error null means success (or cancellation)
+    private void finish(Task task, String error, boolean retryable) {
+        synchronized (this) {
+            if (active != task) return;
+            active = null;
+            queue.remove(task.songId);
+            if (task.cancelled) {
+                Log.d(TAG, "Cancelled " + task.songId);
+            } else if (error == null) {
+                completed.add(task.songId);
+                completedCount++;
+            } else {
+                failedCount++;
+                if (retryable) failed.put(task.songId, error);
+            }
+            saveQueue();
+            startNext();
+        }
+
+        if (task.cancelled) {
+            // A chunk worker may have written after remove() cleaned up
+            partFile(task.songId).delete();
+            stateFile(task.songId).delete();
+            return;
+        }
+        mainHandler.post(() -> {
+            for (OnDownloadListener listener : listeners) {
+                if (error == null) {
+                    listener.onComplete(task.songId);
+                } else {
+                    listener.onFailed(task.songId, error);
+                }
+            }
+        });
+    }
+
+    private void postProgress(Task task) {
+        long downloaded = task.downloadedBytes();
+        mainHandler.post(() -> {
+            for (OnDownloadListener listener : listeners) {
+                listener.onProgress(task.songId, downloaded, task.size);
+            }
+        });
+    }
+
+    private synchronized void onBytes(int count) {
+        totalBytes.addAndGet(count);
+        windowBytes += count;
+        rollThroughputWindow();
+    }
+
+    private void rollThroughputWindow() {
+        long now = SystemClock.elapsedRealtime();
+        long elapsed = now - windowStart;
+        if (elapsed >= THROUGHPUT_WINDOW_MS) {
+            bytesPerSecond = windowBytes * 1000 / elapsed;
+            windowBytes = 0;
+            windowStart = now;
+        }
+    }
+
+    private void saveQueue() {
+        List<String> snapshot = new ArrayList<>(queue);
+        AppExecutors.diskIO().execute(() -> {
+            File target = new File(dir, QUEUE_FILE);
+            File tmp = new File(dir, QUEUE_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(snapshot.size());
+                for (String id : snapshot) {
+                    out.writeUTF(id);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Saving queue failed: " + e.getMessage());
+                return;
+            }
+            if (!tmp.renameTo(target)) tmp.delete();
+        });
+    }
+
+    private File audioFile(String songId) {
+        return new File(dir, songId + AUDIO_SUFFIX);
+    }
+
+    private File partFile(String songId) {
+        return new File(dir, songId + PART_SUFFIX);
+    }
+
+    private File stateFile(String songId) {
+        return new File(dir, songId + STATE_SUFFIX);
+    }
+
+    /**
+     * One song being downloaded. Chunk boundaries and per-chunk progress are what gets
+     * checkpointed to the .state file.
+     */
+    private class Task {
+        final String songId;
+        volatile boolean cancelled = false;
+        String url;
+        long size;
+        String level = "";
+        long[] starts = new long[0];
+        long[] ends = new long[0];
+        long[] done = new long[0];
+        int pendingChunks;
+        String error;
+
+        Task(String songId) {
+            this.songId = songId;
+        }
+
+        void plan(long size, String level) {
+            this.size = size;
+            this.level = level;
+            int count = (int) Math.max(1, Math.min(PARALLEL_CHUNKS, size / MIN_CHUNK_BYTES));
+            starts = new long[count];
+            ends = new long[count];
+            done = new long[count];
+            long step = size / count;
+            for (int i = 0; i < count; i++) {
+                starts[i] = i * step;
+                ends[i] = i == count - 1 ? size : (i + 1) * step;
+            }
+        }
+
+        int chunkCount() {
+            return starts.length;
+        }
+
+        synchronized boolean isChunkDone(int chunk) {
+            return starts[chunk] + done[chunk] >= ends[chunk];
+        }
+
+        synchronized long chunkPosition(int chunk) {
+            return starts[chunk] + done[chunk];
+        }
+
+        long chunkEnd(int chunk) {
+            return ends[chunk];
+        }
+
+        synchronized void advance(int chunk, long bytes) {
+            done[chunk] += bytes;
+        }
+
+        synchronized long downloadedBytes() {
+            long sum = 0;
+            for (long d : done) sum += d;
+            return sum;
+        }
+
+        synchronized void saveState() throws IOException {
+            File target = stateFile(songId);
+            File tmp = new File(dir, songId + STATE_SUFFIX + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(STATE_MAGIC);
+                out.writeByte(STATE_VERSION);
+                out.writeLong(size);
+                out.writeUTF(level);
+                out.writeInt(starts.length);
+                for (int i = 0; i < starts.length; i++) {
+                    out.writeLong(starts[i]);
+                    out.writeLong(ends[i]);
+                    out.writeLong(done[i]);
+                }
+            }
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                throw new IOException("Cannot write " + target.getName());
+            }
+        }
+
+        void saveStateQuietly() {
+            try {
+                saveState();
+            } catch (IOException e) {
+                Log.w(TAG, "Checkpoint failed for " + songId + ": " + e.getMessage());
+            }
+        }
+
+        // Returns false when there is no usable checkpoint
+        synchronized boolean loadState() {
+            File state = stateFile(songId);
+            if (!state.exists() || !partFile(songId).exists()) return false;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(state))) {
+                if (in.readInt() != STATE_MAGIC || in.readByte() != STATE_VERSION) return false;
+                long storedSize = in.readLong();
+                String storedLevel = in.readUTF();
+                int count = in.readInt();
+                if (count <= 0 || count > 64) return false;
+                long[] s = new long[count];
+                long[] e = new long[count];
+                long[] d = new long[count];
+                for (int i = 0; i < count; i++) {
+                    s[i] = in.readLong();
+                    e[i] = in.readLong();
+                    d[i] = in.readLong();
+                    if (d[i] < 0 || s[i] + d[i] > e[i]) return false;
+                }
+                size = storedSize;
+                level = storedLevel;
+                starts = s;
+                ends = e;
+                done = d;
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
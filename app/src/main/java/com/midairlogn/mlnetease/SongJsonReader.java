@@ -0,0 +1,371 @@
+package com.midairlogn.mlnetease;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoders for the Netease API responses. They read straight off the response
+ * body into typed records, so neither the full body text nor an org.json tree is ever held in
+ * memory. Unknown fields are skipped without being materialized.
+ */
+public class SongJsonReader {
+
+    public static class PlaylistData {
+        public final List<String> trackIds = new ArrayList<>();
+        public final List<Song> tracks = new ArrayList<>();
+    }
+
+    // api/cloudsearch/pc: {"result": {"songs": [...], "songCount": n}}
+    public static SearchPage readSearch(Reader in, String keyword) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        int songCount = 0;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("result".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ("songs".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            readSongArray(reader, songs, false);
+                        } else if ("songCount".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                            songCount = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return new SearchPage(keyword, songs, Math.max(songCount, songs.size()));
+    }
+
+    // api/v3/song/detail: {"songs": [...]}
+    public static List<Song> readSongDetail(Reader in) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("songs".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    readSongArray(reader, songs, false);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return songs;
+    }
+
+    // api/v1/album/{id}: {"album": {...}, "songs": [...]} with album pics given as ids
+    // Returns null when the response carries no album.
+    public static AlbumResult readAlbum(Reader in) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        AlbumResult album = null;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("songs".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    readSongArray(reader, songs, true);
+                } else if ("album".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    album = readAlbumInfo(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        if (album != null) {
+            album.songs = songs;
+        }
+        return album;
+    }
+
+    // eapi/song/enhance/player/url/v1: {"data": [{"url": .., "size": .., "level": .., "expi": ..}]}
+    public static SongUrl readSongUrl(Reader in, String id) throws IOException {
+        SongUrl result = new SongUrl(id, "", 0, "");
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("data".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    boolean first = true;
+                    while (reader.hasNext()) {
+                        if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        first = false;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String field = reader.nextName();
+                            if (reader.peek() == JsonToken.NULL) {
+                                reader.skipValue();
+                            } else if ("url".equals(field)) {
+                                result.url = reader.nextString();
+                            } else if ("size".equals(field)) {
+                                result.size = reader.nextLong();
+                            } else if ("level".equals(field)) {
+                                result.level = reader.nextString();
+                            } else if ("expi".equals(field)) {
+                                result.expi = reader.nextInt();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return result;
+    }
+
+    // api/song/lyric: {"code": 200, "lrc": {"lyric": ..}, "tlyric": {"lyric": ..}, "yrc": {"lyric": ..}}
+    // Anything but code 200 (errors, rate limiting) is thrown rather than read as "no lyrics"
+    public static Lyric readLyric(Reader in) throws IOException {
+        String lrc = "";
+        String tlyric = "";
+        String yrc = "";
+        int code = -1;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("code".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    code = reader.nextInt();
+                } else if ("lrc".equals(name)) {
+                    lrc = readLyricField(reader);
+                } else if ("tlyric".equals(name)) {
+                    tlyric = readLyricField(reader);
+                } else if ("yrc".equals(name)) {
+                    yrc = readLyricField(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        if (code != 200) {
+            throw new IOException("Lyric error: code " + code);
+        }
+        return new Lyric(lrc, tlyric, yrc);
+    }
+
+    private static String readLyricField(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return "";
+        }
+        String result = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("lyric".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                result = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
+
+    private static AlbumResult readAlbumInfo(JsonReader reader) throws IOException {
+        AlbumResult album = new AlbumResult();
+        album.name = "";
+        album.artist = "";
+        album.coverImgUrl = "";
+        album.description = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    album.id = reader.nextString();
+                    break;
+                case "name":
+                    album.name = reader.nextString();
+                    break;
+                case "pic":
+                    album.coverImgUrl = CryptoUtils.getPicUrl(reader.nextString(), 300);
+                    break;
+                case "artist":
+                    String artist = readNameField(reader);
+                    album.artist = artist != null ? artist : "";
+                    break;
+                case "publishTime":
+                    album.publishTime = reader.nextLong();
+                    break;
+                case "description":
+                    album.description = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return album;
+    }
+
+    // api/v6/playlist/detail: {"playlist": {"trackIds": [{"id": ..}], "tracks": [...]}}
+    // Returns null when the response carries no playlist.
+    public static PlaylistData readPlaylist(Reader in) throws IOException {
+        PlaylistData data = null;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("playlist".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    data = new PlaylistData();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ("trackIds".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            readTrackIds(reader, data.trackIds);
+                        } else if ("tracks".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            readSongArray(reader, data.tracks, false);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return data;
+    }
+
+    private static void readTrackIds(JsonReader reader, List<String> out) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("id".equals(reader.nextName())) {
+                    out.add(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    private static void readSongArray(JsonReader reader, List<Song> out, boolean picFromId) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Song song = readSong(reader, picFromId);
+            if (song != null) out.add(song);
+        }
+        reader.endArray();
+    }
+
+    // Construct song info similar to Python search_music/playlist_detail
+    private static Song readSong(JsonReader reader, boolean picFromId) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String id = null;
+        String songName = "";
+        StringBuilder artists = new StringBuilder();
+        String album = "";
+        String picUrl = "";
+        String picId = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    songName = reader.nextString();
+                    break;
+                case "ar":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String artist = readNameField(reader);
+                        if (artist == null) continue;
+                        if (artists.length() > 0) artists.append("/");
+                        artists.append(artist);
+                    }
+                    reader.endArray();
+                    break;
+                case "al":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.skipValue();
+                        } else if ("name".equals(field)) {
+                            album = reader.nextString();
+                        } else if ("picUrl".equals(field)) {
+                            picUrl = reader.nextString();
+                        } else if ("pic".equals(field)) {
+                            picId = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (id == null) return null;
+        if (picFromId) {
+            picUrl = picId != null ? CryptoUtils.getPicUrl(picId, 300) : "";
+        }
+        return new Song(id, songName, artists.toString(), album, picUrl);
+    }
+
+    // {"name": "..."} -> name, skipping every other field
+    private static String readNameField(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String result = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("name".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                result = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
+}
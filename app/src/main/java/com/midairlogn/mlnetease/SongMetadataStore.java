@@ -0,0 +1,167 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-device cache of song metadata (name, artists, album, cover) keyed by song id.
+ * NeteaseApi consults it before calling v3/song/detail and fills it from every response that
+ * carries song details. Must not be used from the main thread.
+ */
+public class SongMetadataStore extends SQLiteOpenHelper {
+    private static final String TAG = "SongMetadataStore";
+    private static final String DB_NAME = "song_metadata.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE = "songs";
+    private static final String COL_ID = "id";
+    private static final String COL_NAME = "name";
+    private static final String COL_ARTISTS = "artists";
+    private static final String COL_ALBUM = "album";
+    private static final String COL_PIC_URL = "pic_url";
+    private static final String COL_UPDATED_AT = "updated_at";
+
+    // Entries older than this are treated as unknown and fetched again
+    private static final long STALE_AFTER_MS = TimeUnit.DAYS.toMillis(7);
+    // Stay well below SQLite's bound parameter limit
+    private static final int QUERY_CHUNK = 500;
+
+    private static SongMetadataStore instance;
+
+    public static synchronized SongMetadataStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new SongMetadataStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SongMetadataStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_ID + " INTEGER PRIMARY KEY, "
+                + COL_NAME + " TEXT NOT NULL, "
+                + COL_ARTISTS + " TEXT NOT NULL, "
+                + COL_ALBUM + " TEXT NOT NULL, "
+                + COL_PIC_URL + " TEXT NOT NULL, "
+                + COL_UPDATED_AT + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Pure cache, safe to drop
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    // Returns the fresh entries among ids; unknown and stale ids are simply absent from the map.
+    public Map<String, Song> getFresh(Collection<String> ids) {
+        Map<String, Song> result = new HashMap<>();
+        if (ids.isEmpty()) return result;
+
+        List<String> numericIds = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            if (Song.parseId(id) >= 0) numericIds.add(id);
+        }
+
+        long minUpdatedAt = System.currentTimeMillis() - STALE_AFTER_MS;
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            for (int start = 0; start < numericIds.size(); start += QUERY_CHUNK) {
+                List<String> chunk = numericIds.subList(start, Math.min(start + QUERY_CHUNK, numericIds.size()));
+                StringBuilder sql = new StringBuilder("SELECT ")
+                        .append(COL_ID).append(", ").append(COL_NAME).append(", ")
+                        .append(COL_ARTISTS).append(", ").append(COL_ALBUM).append(", ")
+                        .append(COL_PIC_URL)
+                        .append(" FROM ").append(TABLE)
+                        .append(" WHERE ").append(COL_UPDATED_AT).append(" >= ").append(minUpdatedAt)
+                        .append(" AND ").append(COL_ID).append(" IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ",?");
+                }
+                sql.append(")");
+
+                try (Cursor cursor = db.rawQuery(sql.toString(), chunk.toArray(new String[0]))) {
+                    while (cursor.moveToNext()) {
+                        Song song = new Song(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                                cursor.getString(3), cursor.getString(4));
+                        result.put(song.id, song);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Metadata lookup failed", e);
+        }
+        return result;
+    }
+
+    public Song getFresh(String id) {
+        List<String> ids = new ArrayList<>(1);
+        ids.add(id);
+        return getFresh(ids).get(id);
+    }
+
+    public void putAll(List<Song> songs) {
+        if (songs.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " ("
+                    + COL_ID + ", " + COL_NAME + ", " + COL_ARTISTS + ", " + COL_ALBUM + ", "
+                    + COL_PIC_URL + ", " + COL_UPDATED_AT + ") VALUES (?, ?, ?, ?, ?, ?)");
+            db.beginTransaction();
+            try {
+                for (Song song : songs) {
+                    long id = song.getNumericId();
+                    if (id < 0) continue;
+                    insert.bindLong(1, id);
+                    insert.bindString(2, nonNull(song.name));
+                    insert.bindString(3, nonNull(song.artists));
+                    insert.bindString(4, nonNull(song.album));
+                    insert.bindString(5, nonNull(song.picUrl));
+                    insert.bindLong(6, now);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Metadata write failed", e);
+        }
+    }
+
+    // Write from a background thread without holding up the caller
+    public void putAllAsync(List<Song> songs) {
+        if (songs.isEmpty()) return;
+        List<Song> copy = new ArrayList<>(songs);
+        AppExecutors.diskIO().execute(() -> putAll(copy));
+    }
+
+    public void clear() {
+        try {
+            getWritableDatabase().delete(TABLE, null, null);
+        } catch (Exception e) {
+            Log.w(TAG, "Metadata clear failed", e);
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,107 @@
+package com.midairlogn.mlnetease;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-wise storage for long song lists such as a 10k-track playlist. Ids are kept as a long
+ * array, and artist, album and cover url text, which repeats across a playlist, is stored once per
+ * distinct value. No Song object is retained per row: get() materializes one on demand, so only
+ * the rows being shown or played exist as objects.
+ *
+ * Rows are append-only and never change, so a row number stays valid for the life of the table and
+ * whoever holds rows (see {@link PlayQueue}) is unaffected by later appends. Thread-safe.
+ */
+public class SongTable extends AbstractList<Song> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] artists = new String[INITIAL_CAPACITY];
+    private String[] albums = new String[INITIAL_CAPACITY];
+    private String[] picUrls = new String[INITIAL_CAPACITY];
+    private int size = 0;
+    private final Map<String, String> pool = new HashMap<>();
+    // Ids that are not plain numbers, by row; not expected from the API, so usually never created
+    private Map<Integer, String> textIds;
+
+    public SongTable() {
+    }
+
+    public SongTable(List<Song> songs) {
+        appendAll(songs);
+    }
+
+    // Returns the row of the new entry
+    public synchronized int append(Song song) {
+        ensureCapacity(size + 1);
+        long id = song.getNumericId();
+        // Only ids that print back exactly ("0123" or " 42" do not) go into the number column
+        if (id >= 0 && !Long.toString(id).equals(song.id)) id = -1;
+        if (id < 0) {
+            if (textIds == null) textIds = new HashMap<>();
+            textIds.put(size, song.id);
+        }
+        ids[size] = id;
+        names[size] = song.name;
+        artists[size] = intern(song.artists);
+        albums[size] = intern(song.album);
+        picUrls[size] = intern(song.picUrl);
+        return size++;
+    }
+
+    public synchronized void appendAll(List<Song> songs) {
+        ensureCapacity(size + songs.size());
+        for (Song song : songs) {
+            append(song);
+        }
+    }
+
+    // A new Song for row; callers that need the same instance again have to keep it
+    @Override
+    public synchronized Song get(int row) {
+        checkRow(row);
+        if (ids[row] < 0) {
+            return new Song(textIds.get(row), names[row], artists[row], albums[row], picUrls[row]);
+        }
+        return new Song(ids[row], names[row], artists[row], albums[row], picUrls[row]);
+    }
+
+    // Numeric id of row without materializing it; -1 for an id that is not a plain canonical number
+    public synchronized long getId(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    private String intern(String value) {
+        if (value == null) return null;
+        String pooled = pool.get(value);
+        if (pooled != null) return pooled;
+        pool.put(value, value);
+        return value;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) return;
+        int length = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, length);
+        names = Arrays.copyOf(names, length);
+        artists = Arrays.copyOf(artists, length);
+        albums = Arrays.copyOf(albums, length);
+        picUrls = Arrays.copyOf(picUrls, length);
+    }
+}
@@ -0,0 +1,21 @@
+package com.midairlogn.mlnetease;
+
+public class SongUrl {
+    public String id;
+    public String url;
+    public long size;
+    public String level;
+    // CDN url lifetime in seconds as reported by the server, 0 when unknown
+    public int expi;
+
+    public SongUrl(String id, String url, long size, String level) {
+        this.id = id;
+        this.url = url;
+        this.size = size;
+        this.level = level;
+    }
+
+    public boolean isPlayable() {
+        return url != null && !url.trim().isEmpty() && !"null".equals(url);
+    }
+}
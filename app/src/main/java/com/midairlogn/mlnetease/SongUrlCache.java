@@ -0,0 +1,75 @@
+package com.midairlogn.mlnetease;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolved playback urls keyed by song id and requested quality level. CDN urls are signed and
+ * expire (the server reports the lifetime as "expi"), so entries are only handed out while they
+ * have at least REFRESH_MARGIN_MS left; {@link #isExpiring} lets callers refresh ahead of that.
+ * Kept in memory only: a url outlives neither its expiry nor, in practice, the process.
+ */
+public class SongUrlCache {
+    // Used when the response carries no expi
+    private static final long DEFAULT_LIFETIME_MS = TimeUnit.MINUTES.toMillis(20);
+    // Stop serving an entry this long before it expires, so playback never starts on a dying url
+    private static final long REFRESH_MARGIN_MS = TimeUnit.MINUTES.toMillis(2);
+    private static final int MAX_ENTRIES = 64;
+
+    private static class Entry {
+        final SongUrl songUrl;
+        final long expiresAt;
+
+        Entry(SongUrl songUrl, long expiresAt) {
+            this.songUrl = songUrl;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // Returns a url that stays valid for at least REFRESH_MARGIN_MS, or null
+    public synchronized SongUrl get(String id, String level) {
+        Entry entry = entries.get(key(id, level));
+        if (entry == null) return null;
+        if (SystemClock.elapsedRealtime() > entry.expiresAt - REFRESH_MARGIN_MS) {
+            entries.remove(key(id, level));
+            return null;
+        }
+        return entry.songUrl;
+    }
+
+    public synchronized void put(String id, String level, SongUrl songUrl) {
+        if (!songUrl.isPlayable()) return;
+        long lifetime = songUrl.expi > 0 ? TimeUnit.SECONDS.toMillis(songUrl.expi) : DEFAULT_LIFETIME_MS;
+        entries.put(key(id, level), new Entry(songUrl, SystemClock.elapsedRealtime() + lifetime));
+    }
+
+    // True when there is an entry and it is within withinMs of its refresh point. No entry is not
+    // "expiring": there is nothing to refresh, and the next play resolves a url anyway.
+    public synchronized boolean isExpiring(String id, String level, long withinMs) {
+        Entry entry = entries.get(key(id, level));
+        return entry != null
+                && SystemClock.elapsedRealtime() + withinMs > entry.expiresAt - REFRESH_MARGIN_MS;
+    }
+
+    public synchronized void invalidate(String id, String level) {
+        entries.remove(key(id, level));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static String key(String id, String level) {
+        return id + "|" + level;
+    }
+}
@@ -0,0 +1,332 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sparse on-disk cache of audio streams, used by {@link StreamProxy}. Each track is one data file
+ * filled in CHUNK_SIZE pieces at their real offsets, plus a small meta file holding the total
+ * length, content type and a bitmap of the chunks that are complete. Any mix of ranges can be
+ * cached, so seeking around a partially played track still reuses what was fetched.
+ *
+ * The cache is bounded by BUDGET_BYTES of completed chunks; whole tracks are evicted least
+ * recently used first, skipping tracks that are currently being streamed.
+ */
+public class StreamCache {
+    private static final String TAG = "StreamCache";
+    private static final String DIR_NAME = "stream";
+    private static final String DATA_SUFFIX = ".data";
+    private static final String META_SUFFIX = ".meta";
+
+    public static final int CHUNK_SIZE = 128 * 1024;
+    // Chunks marked between two saves of the bitmap (2 MB). Chunks not saved yet are only
+    // downloaded again after a crash, so this trades a little of that for far fewer meta rewrites.
+    private static final int META_SAVE_CHUNKS = 16;
+    private static final long BUDGET_BYTES = 512L * 1024 * 1024;
+
+    private static final int MAGIC = 0x4D4C5343; // "MLSC"
+    private static final int VERSION = 1;
+
+    private static StreamCache instance;
+
+    private final File dir;
+    // Open entries, shared by every connection streaming the same track
+    private final Map<String, Entry> open = new HashMap<>();
+    // All cached tracks in access order: key -> bytes of completed chunks. Built lazily.
+    private LinkedHashMap<String, Long> index;
+    private long totalBytes = 0;
+
+    public static synchronized StreamCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new StreamCache(new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    private StreamCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * One cached track. Length is -1 until the first upstream response told us the size.
+     */
+    public class Entry {
+        final String key;
+        private long length = -1;
+        private String contentType = "audio/mpeg";
+        private BitSet chunks = new BitSet();
+        private RandomAccessFile data;
+        private int openCount = 0;
+        // Chunks marked since the bitmap was last saved
+        private int unsavedChunks = 0;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        public synchronized long getLength() {
+            return length;
+        }
+
+        public synchronized String getContentType() {
+            return contentType;
+        }
+
+        public synchronized int getChunkCount() {
+            return length < 0 ? 0 : (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        }
+
+        public synchronized boolean hasChunk(int chunk) {
+            return chunks.get(chunk);
+        }
+
+        public synchronized boolean isComplete() {
+            int count = getChunkCount();
+            return count > 0 && chunks.nextClearBit(0) >= count;
+        }
+
+        public void setLength(long length, String contentType) throws IOException {
+            long droppedBytes;
+            synchronized (this) {
+                if (this.length == length) return;
+                // A different length means a different file behind the same key; start over
+                droppedBytes = completedBytes();
+                this.length = length;
+                if (contentType != null) this.contentType = contentType;
+                chunks = new BitSet();
+                closeData();
+                dataFile(key).delete();
+                writeMeta();
+            }
+            if (droppedBytes > 0) onChunkAdded(key, -droppedBytes);
+        }
+
+        private long completedBytes() {
+            long bytes = 0;
+            int count = getChunkCount();
+            for (int c = chunks.nextSetBit(0); c >= 0 && c < count; c = chunks.nextSetBit(c + 1)) {
+                bytes += Math.min(CHUNK_SIZE, length - (long) c * CHUNK_SIZE);
+            }
+            return bytes;
+        }
+
+        public synchronized int read(long position, byte[] buffer, int offset, int count) throws IOException {
+            RandomAccessFile file = data();
+            file.seek(position);
+            return file.read(buffer, offset, count);
+        }
+
+        public synchronized void write(long position, byte[] buffer, int offset, int count) throws IOException {
+            RandomAccessFile file = data();
+            file.seek(position);
+            file.write(buffer, offset, count);
+        }
+
+        public void markChunk(int chunk) throws IOException {
+            long chunkBytes;
+            synchronized (this) {
+                if (chunks.get(chunk)) return;
+                chunks.set(chunk);
+                chunkBytes = Math.min(CHUNK_SIZE, length - (long) chunk * CHUNK_SIZE);
+                if (++unsavedChunks >= META_SAVE_CHUNKS || isComplete()) writeMeta();
+            }
+            onChunkAdded(key, chunkBytes);
+        }
+
+        private RandomAccessFile data() throws IOException {
+            if (data == null) {
+                data = new RandomAccessFile(dataFile(key), "rw");
+            }
+            return data;
+        }
+
+        private void closeData() {
+            if (data != null) {
+                try {
+                    data.close();
+                } catch (IOException ignored) {
+                }
+                data = null;
+            }
+        }
+
+        // Saves the bitmap if chunks were marked since the last save; release() calls it
+        private void flushMeta() {
+            if (unsavedChunks == 0) return;
+            try {
+                writeMeta();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot save meta for " + key + ": " + e.getMessage());
+            }
+        }
+
+        private void writeMeta() throws IOException {
+            unsavedChunks = 0;
+            File meta = metaFile(key);
+            File tmp = new File(dir, key + META_SUFFIX + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(length);
+                out.writeUTF(contentType);
+                long[] bits = chunks.toLongArray();
+                out.writeInt(bits.length);
+                for (long word : bits) {
+                    out.writeLong(word);
+                }
+            }
+            if (!tmp.renameTo(meta)) {
+                tmp.delete();
+                throw new IOException("Cannot write " + meta.getName());
+            }
+        }
+
+        private void readMeta() {
+            File meta = metaFile(key);
+            if (!meta.exists()) return;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)))) {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    throw new IOException("Unknown format");
+                }
+                long storedLength = in.readLong();
+                String storedType = in.readUTF();
+                long[] bits = new long[in.readInt()];
+                for (int i = 0; i < bits.length; i++) {
+                    bits[i] = in.readLong();
+                }
+                length = storedLength;
+                contentType = storedType;
+                chunks = BitSet.valueOf(bits);
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable meta for " + key + ": " + e.getMessage());
+                meta.delete();
+                dataFile(key).delete();
+            }
+        }
+    }
+
+    // Opens (or joins) the entry for key. Every open must be paired with release().
+    public synchronized Entry open(String key) {
+        ensureIndex();
+        Entry entry = open.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            synchronized (entry) {
+                entry.readMeta();
+            }
+            open.put(key, entry);
+        }
+        entry.openCount++;
+        // Touch for LRU order, both in memory and across restarts
+        if (index.get(key) == null) {
+            index.put(key, 0L);
+        }
+        metaFile(key).setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    public synchronized void release(Entry entry) {
+        entry.openCount--;
+        if (entry.openCount <= 0) {
+            open.remove(entry.key);
+            synchronized (entry) {
+                entry.flushMeta();
+                entry.closeData();
+            }
+        }
+        trimToBudget();
+    }
+
+    public synchronized long getTotalBytes() {
+        ensureIndex();
+        return totalBytes;
+    }
+
+    public synchronized void clear() {
+        ensureIndex();
+        Iterator<String> it = index.keySet().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (open.containsKey(key)) continue;
+            totalBytes -= index.get(key);
+            deleteFiles(key);
+            it.remove();
+        }
+    }
+
+    private synchronized void onChunkAdded(String key, long bytes) {
+        ensureIndex();
+        Long current = index.get(key);
+        index.put(key, (current != null ? current : 0L) + bytes);
+        totalBytes += bytes;
+        trimToBudget();
+    }
+
+    private void trimToBudget() {
+        if (totalBytes <= BUDGET_BYTES) return;
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > BUDGET_BYTES && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (open.containsKey(eldest.getKey())) continue; // Being streamed right now
+            totalBytes -= eldest.getValue();
+            deleteFiles(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    private void ensureIndex() {
+        if (index != null) return;
+        index = new LinkedHashMap<>(32, 0.75f, true);
+        totalBytes = 0;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Cannot create " + dir);
+            return;
+        }
+
+        File[] metas = dir.listFiles((d, name) -> name.endsWith(META_SUFFIX));
+        if (metas == null) return;
+        // Oldest first so iteration order matches least recently used
+        Arrays.sort(metas, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File meta : metas) {
+            String name = meta.getName();
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            Entry entry = new Entry(key);
+            long bytes;
+            synchronized (entry) {
+                entry.readMeta();
+                bytes = entry.completedBytes();
+            }
+            index.put(key, bytes);
+            totalBytes += bytes;
+        }
+    }
+
+    private void deleteFiles(String key) {
+        metaFile(key).delete();
+        dataFile(key).delete();
+    }
+
+    private File metaFile(String key) {
+        return new File(dir, key + META_SUFFIX);
+    }
+
+    private File dataFile(String key) {
+        return new File(dir, key + DATA_SUFFIX);
+    }
+}
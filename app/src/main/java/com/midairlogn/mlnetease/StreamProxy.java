@@ -0,0 +1,403 @@
+package com.midairlogn.mlnetease;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Loopback HTTP server that MediaPlayer streams through. Bytes already in the {@link StreamCache}
+ * are served from disk; gaps are fetched from the CDN with range requests, forwarded to the player
+ * and written to the cache as they arrive. Replays, loop-one repeats and seeks back therefore do
+ * not download the same audio again.
+ *
+ * Urls look like http://127.0.0.1:port/{cacheKey}?t={token}. The cache key must be stable across
+ * url refreshes (CDN urls are signed and change), e.g. song id plus quality level. The upstream url
+ * never appears in the request: proxyUrl() registers it under a random token, and only registered
+ * tracks are served, so other apps on the device cannot use the proxy to fetch arbitrary urls.
+ */
+public class StreamProxy {
+    private static final String TAG = "StreamProxy";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_REGISTERED = 64;
+
+    private static StreamProxy instance;
+
+    private final StreamCache cache;
+    private final OkHttpClient upstreamClient = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(20, TimeUnit.SECONDS)
+            .build();
+    private final SecureRandom random = new SecureRandom();
+    // cacheKey -> latest registration, least recently registered first
+    private final Map<String, Registration> registered = new LinkedHashMap<String, Registration>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Registration> eldest) {
+            return size() > MAX_REGISTERED;
+        }
+    };
+    private ServerSocket serverSocket;
+
+    private static class Registration {
+        final String token;
+        String upstreamUrl;
+
+        Registration(String token, String upstreamUrl) {
+            this.token = token;
+            this.upstreamUrl = upstreamUrl;
+        }
+    }
+
+    public static synchronized StreamProxy getInstance(Context context) {
+        if (instance == null) {
+            instance = new StreamProxy(StreamCache.getInstance(context));
+        }
+        return instance;
+    }
+
+    private StreamProxy(StreamCache cache) {
+        this.cache = cache;
+    }
+
+    // Url the player should open for this track; the upstream url itself if the proxy is unavailable
+    public String proxyUrl(String cacheKey, String upstreamUrl) {
+        if (!isValidKey(cacheKey) || !ensureStarted()) {
+            return upstreamUrl;
+        }
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/" + cacheKey
+                + "?t=" + register(cacheKey, upstreamUrl);
+    }
+
+    // Token for cacheKey, kept across url refreshes so urls already handed out stay valid
+    private synchronized String register(String cacheKey, String upstreamUrl) {
+        Registration registration = registered.get(cacheKey);
+        if (registration == null) {
+            byte[] bytes = new byte[16];
+            random.nextBytes(bytes);
+            StringBuilder token = new StringBuilder();
+            for (byte b : bytes) token.append(String.format("%02x", b));
+            registration = new Registration(token.toString(), upstreamUrl);
+            registered.put(cacheKey, registration);
+        } else {
+            registration.upstreamUrl = upstreamUrl;
+        }
+        return registration.token;
+    }
+
+    // Latest upstream url registered for cacheKey, or null if token does not match it
+    private synchronized String lookup(String cacheKey, String token) {
+        Registration registration = registered.get(cacheKey);
+        return registration != null && registration.token.equals(token) ? registration.upstreamUrl : null;
+    }
+
+    private synchronized boolean ensureStarted() {
+        if (serverSocket != null && !serverSocket.isClosed()) return true;
+        try {
+            serverSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot start stream proxy", e);
+            serverSocket = null;
+            return false;
+        }
+
+        ServerSocket socket = serverSocket;
+        Thread acceptThread = AppExecutors.stream().newThread(() -> {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    AppExecutors.stream().execute(() -> handle(client), () -> refuse(client));
+                } catch (IOException e) {
+                    if (!socket.isClosed()) Log.w(TAG, "accept failed", e);
+                }
+            }
+        });
+        acceptThread.start();
+        Log.d(TAG, "Listening on port " + socket.getLocalPort());
+        return true;
+    }
+
+    // Every stream thread is busy: answer 503 right away so the player reports an error instead of
+    // waiting on a connection nobody serves. Runs on the accept thread.
+    private static void refuse(Socket client) {
+        Log.w(TAG, "All stream threads busy, refusing connection");
+        try (Socket socket = client) {
+            writeStatus(socket.getOutputStream(), "503 Service Unavailable");
+        } catch (IOException e) {
+            Log.d(TAG, "Refused connection ended: " + e.getMessage());
+        }
+    }
+
+    private void handle(Socket client) {
+        StreamCache.Entry entry = null;
+        Upstream upstream = null;
+        try (Socket socket = client) {
+            socket.setSoTimeout(30000);
+            ClientRequest request = ClientRequest.read(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            if (request == null) {
+                writeStatus(out, "400 Bad Request");
+                return;
+            }
+            String upstreamUrl = lookup(request.cacheKey, request.token);
+            if (upstreamUrl == null) {
+                writeStatus(out, "403 Forbidden");
+                return;
+            }
+            if (request.rangeEnd >= 0 && request.rangeEnd < request.rangeStart) {
+                writeStatus(out, "416 Range Not Satisfiable");
+                return;
+            }
+
+            entry = cache.open(request.cacheKey);
+            long length = entry.getLength();
+            if (length < 0) {
+                // First time for this track: the first upstream response tells us its size
+                long alignedStart = request.rangeStart - request.rangeStart % StreamCache.CHUNK_SIZE;
+                upstream = Upstream.open(upstreamClient, upstreamUrl, alignedStart, -1);
+                entry.setLength(upstream.totalLength, upstream.contentType);
+                length = upstream.totalLength;
+            }
+
+            if (request.rangeStart >= length) {
+                writeStatus(out, "416 Range Not Satisfiable");
+                return;
+            }
+            long end = request.rangeEnd < 0 ? length - 1 : Math.min(request.rangeEnd, length - 1);
+            writeHeaders(out, request, entry.getContentType(), length, end);
+            if (!request.isHead) {
+                upstream = stream(entry, upstreamUrl, request.rangeStart, end, upstream, out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Usually the player closed the connection (seek, skip, reset)
+            Log.d(TAG, "Connection ended: " + e.getMessage());
+        } finally {
+            if (upstream != null) upstream.close();
+            if (entry != null) cache.release(entry);
+        }
+    }
+
+    // Send [start, end] to out, from disk where cached and from upstream otherwise
+    private Upstream stream(StreamCache.Entry entry, String url, long start, long end,
+                            Upstream upstream, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long length = entry.getLength();
+        int chunkCount = entry.getChunkCount();
+        long position = start;
+
+        while (position <= end) {
+            int chunk = (int) (position / StreamCache.CHUNK_SIZE);
+            long chunkStart = (long) chunk * StreamCache.CHUNK_SIZE;
+            long chunkEnd = Math.min(chunkStart + StreamCache.CHUNK_SIZE, length); // exclusive
+            long stop = Math.min(chunkEnd, end + 1);
+
+            if (entry.hasChunk(chunk)) {
+                while (position < stop) {
+                    int n = entry.read(position, buffer, 0, (int) Math.min(buffer.length, stop - position));
+                    if (n <= 0) throw new IOException("Short read from cache");
+                    out.write(buffer, 0, n);
+                    position += n;
+                }
+                continue;
+            }
+
+            if (upstream == null || upstream.position != chunkStart) {
+                if (upstream != null) upstream.close();
+                // Fetch the whole run of missing chunks in one request
+                int runEnd = chunk + 1;
+                while (runEnd < chunkCount && !entry.hasChunk(runEnd)) runEnd++;
+                long requestEnd = Math.min((long) runEnd * StreamCache.CHUNK_SIZE, length) - 1;
+                upstream = Upstream.open(upstreamClient, url, chunkStart, requestEnd);
+            }
+
+            // Download the complete chunk so it can be cached, forwarding the requested part
+            long p = chunkStart;
+            while (p < chunkEnd) {
+                int n = upstream.in.read(buffer, 0, (int) Math.min(buffer.length, chunkEnd - p));
+                if (n < 0) throw new IOException("Upstream ended early at " + p);
+                entry.write(p, buffer, 0, n);
+                long from = Math.max(p, position);
+                long to = Math.min(p + n, stop);
+                if (to > from) {
+                    out.write(buffer, (int) (from - p), (int) (to - from));
+                }
+                p += n;
+            }
+            upstream.position = chunkEnd;
+            entry.markChunk(chunk);
+            position = stop;
+        }
+        return upstream;
+    }
+
+    private static void writeHeaders(OutputStream out, ClientRequest request, String contentType,
+                                     long length, long end) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        if (request.hasRange) {
+            headers.append("HTTP/1.1 206 Partial Content\r\n")
+                    .append("Content-Range: bytes ").append(request.rangeStart).append('-').append(end)
+                    .append('/').append(length).append("\r\n");
+        } else {
+            headers.append("HTTP/1.1 200 OK\r\n");
+        }
+        headers.append("Content-Type: ").append(contentType).append("\r\n")
+                .append("Content-Length: ").append(end - request.rangeStart + 1).append("\r\n")
+                .append("Accept-Ranges: bytes\r\n")
+                .append("Connection: close\r\n\r\n");
+        out.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeStatus(OutputStream out, String status) throws IOException {
+        out.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static boolean isValidKey(String key) {
+        return key != null && key.matches("[A-Za-z0-9_.-]{1,64}");
+    }
+
+    private static class ClientRequest {
+        String cacheKey;
+        String token;
+        boolean isHead;
+        boolean hasRange;
+        long rangeStart = 0;
+        long rangeEnd = -1;
+
+        // Parses the request line and headers; null when the request is not one of ours
+        static ClientRequest read(InputStream in) throws IOException {
+            String requestLine = readLine(in);
+            if (requestLine == null) return null;
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2) return null;
+
+            ClientRequest request = new ClientRequest();
+            request.isHead = "HEAD".equals(parts[0]);
+            if (!request.isHead && !"GET".equals(parts[0])) return null;
+
+            Uri uri = Uri.parse("http://127.0.0.1" + parts[1]);
+            request.cacheKey = uri.getLastPathSegment();
+            request.token = uri.getQueryParameter("t");
+            if (!isValidKey(request.cacheKey) || request.token == null) return null;
+
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) continue;
+                if (!"range".equalsIgnoreCase(line.substring(0, colon).trim())) continue;
+
+                // Only single "bytes=start-[end]" ranges; MediaPlayer never sends anything else
+                String value = line.substring(colon + 1).trim();
+                if (!value.startsWith("bytes=") || value.contains(",")) continue;
+                String[] bounds = value.substring(6).split("-", -1);
+                try {
+                    if (!bounds[0].isEmpty()) {
+                        request.rangeStart = Long.parseLong(bounds[0].trim());
+                        request.hasRange = true;
+                        if (bounds.length > 1 && !bounds[1].trim().isEmpty()) {
+                            request.rangeEnd = Long.parseLong(bounds[1].trim());
+                        }
+                    }
+                } catch (NumberFormatException ignored) {
+                    request.rangeStart = 0;
+                    request.rangeEnd = -1;
+                    request.hasRange = false;
+                }
+            }
+            return request;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') break;
+                if (c != '\r') line.append((char) c);
+                if (line.length() > 8192) throw new IOException("Header line too long");
+            }
+            return c == -1 && line.length() == 0 ? null : line.toString();
+        }
+    }
+
+    private static class Upstream {
+        Response response;
+        InputStream in;
+        long position;
+        long totalLength;
+        String contentType;
+
+        // Opens [start, end] of url (end -1 for open-ended), positioned at start
+        static Upstream open(OkHttpClient client, String url, long start, long end) throws IOException {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Safari/537.36 Chrome/91.0.4472.164 NeteaseMusicDesktop/2.10.2.200154")
+                    .header("Referer", "https://music.163.com/")
+                    .header("Range", "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end) : ""))
+                    .build();
+
+            Upstream upstream = new Upstream();
+            upstream.response = client.newCall(request).execute();
+            try {
+                int code = upstream.response.code();
+                if (code != 206 && code != 200) {
+                    throw new IOException("Upstream HTTP " + code);
+                }
+                upstream.in = upstream.response.body().byteStream();
+                upstream.contentType = upstream.response.header("Content-Type", "audio/mpeg");
+
+                long bodyLength = upstream.response.body().contentLength();
+                if (code == 206) {
+                    // Content-Range: bytes start-end/total
+                    String contentRange = upstream.response.header("Content-Range", "");
+                    int slash = contentRange.lastIndexOf('/');
+                    upstream.totalLength = slash >= 0 && !contentRange.endsWith("*")
+                            ? Long.parseLong(contentRange.substring(slash + 1).trim()) : -1;
+                } else {
+                    // Range ignored: the whole file, starting at 0
+                    upstream.totalLength = bodyLength;
+                    skipFully(upstream.in, start);
+                }
+                if (upstream.totalLength <= 0) {
+                    throw new IOException("Upstream length unknown");
+                }
+                upstream.position = start;
+                return upstream;
+            } catch (IOException | RuntimeException e) {
+                upstream.close();
+                throw e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+
+        private static void skipFully(InputStream in, long count) throws IOException {
+            while (count > 0) {
+                long skipped = in.skip(count);
+                if (skipped <= 0) {
+                    if (in.read() < 0) throw new IOException("Upstream ended while skipping");
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        void close() {
+            if (response != null) response.close();
+        }
+    }
+}